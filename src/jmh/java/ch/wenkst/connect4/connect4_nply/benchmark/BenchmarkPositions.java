@@ -0,0 +1,37 @@
+package ch.wenkst.connect4.connect4_nply.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.sw_utils.Utils;
+
+/**
+ * reads the positions of the test files that are used by the benchmarks
+ */
+public class BenchmarkPositions {
+	public static final String dirTest = Utils.getWorkDir() + File.separator + "test" + File.separator;
+	
+	
+	/**
+	 * reads the positions of a test file, each line contains the move sequence and the score of the position
+	 * @param fileName 		name of the file in the test folder
+	 * @return 				all positions of the file
+	 * @throws IOException
+	 */
+	public static Position[] fromFile(String fileName) throws IOException {
+		List<Position> positions = new ArrayList<>();
+		for (String line : Files.readAllLines(new File(dirTest + fileName).toPath())) {
+			String[] parts = line.split(" ");
+			Position position = new Position();
+			if (position.fromMoveSequence(parts[0].trim())) {
+				positions.add(position);
+			}
+		}
+		
+		return positions.toArray(new Position[0]);
+	}
+}
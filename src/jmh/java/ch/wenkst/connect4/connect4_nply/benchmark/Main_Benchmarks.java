@@ -0,0 +1,29 @@
+package ch.wenkst.connect4.connect4_nply.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the jmh benchmarks with the gc profiler, which reports the allocation rate (gc.alloc.rate.norm is
+ * the number of bytes allocated per operation). the usual jmh command line options can be passed, e.g.
+ * java -jar target/benchmarks.jar SolverBenchmark -p testFile=test_positions.txt
+ */
+public class Main_Benchmarks {
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLineOptions)
+				.addProfiler(GCProfiler.class);
+		
+		if (commandLineOptions.getIncludes().isEmpty()) {
+			options.include(Main_Benchmarks.class.getPackage().getName() + ".*");
+		}
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,59 @@
+package ch.wenkst.connect4.connect4_nply.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.MoveSorter;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+
+/**
+ * benchmark of the move sorter, one operation adds the moves of all columns
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MoveSorterBenchmark {
+	private MoveSorter moveSorter = new MoveSorter();
+	private byte[][] scores; 		// random move scores
+	private int index = 0; 			// index of the next scores
+
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		scores = new byte[1024][AppConfig.boardWidth];
+		for (byte[] moveScores : scores) {
+			for (int col=0; col<AppConfig.boardWidth; col++) {
+				moveScores[col] = (byte) random.nextInt(8);
+			}
+		}
+	}
+
+
+	@Benchmark
+	public long add() {
+		byte[] moveScores = scores[index];
+		index = (index + 1) & (scores.length - 1);
+
+		moveSorter.reset();
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			moveSorter.add(Position.columnMask(col), moveScores[col]);
+		}
+		return moveSorter.getMoves()[moveSorter.size() - 1];
+	}
+}
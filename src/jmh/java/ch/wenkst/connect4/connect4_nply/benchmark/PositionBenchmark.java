@@ -0,0 +1,78 @@
+package ch.wenkst.connect4.connect4_nply.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.wenkst.connect4.connect4_nply.game.Position;
+
+/**
+ * benchmarks of the bitboard operations of a position. winningMoveMask is private, it is measured through
+ * canWinNext (one winning move mask) and nonLosingMoves (winning move mask of the opponent)
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PositionBenchmark {
+	private Position[] positions; 		// positions of the medium test set
+	private long[] moves; 				// a legal move for each position
+	private int index = 0; 				// index of the next position
+
+
+	@Setup
+	public void setup() throws IOException {
+		positions = BenchmarkPositions.fromFile("5_begin_medium.txt");
+		moves = new long[positions.length];
+		for (int i=0; i<positions.length; i++) {
+			long legalMoves = positions[i].nonLosingMoves();
+			moves[i] = Long.lowestOneBit(legalMoves);
+		}
+	}
+
+
+	/**
+	 * returns the index of the next position
+	 */
+	private int nextIndex() {
+		index = index + 1 == positions.length ? 0 : index + 1;
+		return index;
+	}
+
+
+	@Benchmark
+	public boolean canWinNext() {
+		return positions[nextIndex()].canWinNext();
+	}
+
+
+	@Benchmark
+	public long nonLosingMoves() {
+		return positions[nextIndex()].nonLosingMoves();
+	}
+
+
+	@Benchmark
+	public byte moveScore() {
+		int i = nextIndex();
+		return positions[i].moveScore(moves[i]);
+	}
+
+
+	@Benchmark
+	public Position mirror() {
+		return positions[nextIndex()].mirror();
+	}
+}
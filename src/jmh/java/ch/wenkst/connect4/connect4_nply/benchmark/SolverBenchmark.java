@@ -0,0 +1,77 @@
+package ch.wenkst.connect4.connect4_nply.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.game.SolvedPosition;
+import ch.wenkst.connect4.connect4_nply.solver.Connect4Solver;
+
+/**
+ * end to end benchmark of the solver, one operation solves one position of the test set. the test sets in
+ * the test folder are grouped by their difficulty. a new solver is created for every iteration so that the
+ * transposition table does not contain the positions of the previous iteration
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class SolverBenchmark {
+	@Param({"test_positions.txt", "5_begin_medium.txt"})
+	private String testFile;
+
+	@Param({"-1"})
+	private int nplyTranspositions;
+
+	private Position[] positions; 		// positions of the test set
+	private Connect4Solver solver;
+	private int index = 0; 				// index of the next position
+
+
+	@Setup(Level.Trial)
+	public void readPositions() throws IOException {
+		positions = BenchmarkPositions.fromFile(testFile);
+	}
+
+
+	@Setup(Level.Iteration)
+	public void createSolver() {
+		solver = new Connect4Solver(true, nplyTranspositions);
+	}
+
+
+	/**
+	 * returns the next position of the test set
+	 */
+	private Position nextPosition() {
+		index = index + 1 == positions.length ? 0 : index + 1;
+		return positions[index];
+	}
+
+
+	@Benchmark
+	public byte findBestScore() {
+		return solver.findBestScore(nextPosition());
+	}
+
+
+	@Benchmark
+	public SolvedPosition findOptimalMoves() {
+		return solver.findOptimalMoves(nextPosition());
+	}
+}
@@ -0,0 +1,88 @@
+package ch.wenkst.connect4.connect4_nply.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.ArrayTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.BucketTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.HashMapTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.SharedTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.TranspositionTable;
+
+/**
+ * benchmark of the transposition tables with random keys
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class TranspositionTableBenchmark {
+	@Param({"array", "bucket", "hashMap", "shared"})
+	private String table;
+
+	private TranspositionTable tpTable;
+	private long[] keys; 			// random position keys
+	private int index = 0; 			// index of the next key
+
+
+	@Setup
+	public void setup() {
+		switch (table) {
+			case "bucket":
+				tpTable = new BucketTranspositionTable(AppConfig.tpTableSize);
+				break;
+			case "hashMap":
+				tpTable = new HashMapTranspositionTable(AppConfig.tpTableSize);
+				break;
+			case "shared":
+				tpTable = new SharedTranspositionTable(AppConfig.tpTableSize);
+				break;
+			default:
+				tpTable = new ArrayTranspositionTable(AppConfig.tpTableSize);
+		}
+
+		// fill the table with random keys
+		Random random = new Random(42);
+		keys = new long[1 << 20];
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = random.nextLong() >>> (Long.SIZE - AppConfig.boardSize - AppConfig.boardWidth);
+			tpTable.put(keys[i], (byte) (i % 30 + 1));
+		}
+	}
+
+
+	/**
+	 * returns the next random key
+	 */
+	private long nextKey() {
+		index = (index + 1) & (keys.length - 1);
+		return keys[index];
+	}
+
+
+	@Benchmark
+	public boolean put() {
+		return tpTable.put(nextKey(), (byte) 1);
+	}
+
+
+	@Benchmark
+	public byte get() {
+		return tpTable.get(nextKey());
+	}
+}
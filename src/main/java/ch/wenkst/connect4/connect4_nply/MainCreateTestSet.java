@@ -26,12 +26,8 @@ public class MainCreateTestSet {
 		// create the random positions if they are not created yet
 		testSetCreator.createRandomPositions();
 
-		// solve the positions
-		testSetCreator.solvePositions();
-		
-		
-		// write the test-set to a csv-file
-		testSetCreator.toCsv(app.csvFile);
+		// solve the positions and write the test-set to a csv-file
+		testSetCreator.solvePositions(app.csvFile);
 		
 		
 		log.info("all positions solved");
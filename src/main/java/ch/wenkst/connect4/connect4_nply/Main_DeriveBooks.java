@@ -0,0 +1,105 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.ArrayNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.HashNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.MappedNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.solver.BookDeriver;
+import ch.wenkst.connect4.connect4_nply.solver.PositionGenerator;
+import ch.wenkst.sw_utils.logging.Log;
+
+public class Main_DeriveBooks {
+	static {
+		System.setProperty("config.file", "config/app.conf"); 					// application config file
+	}
+
+	private static Log log = Log.getLogger(Main_DeriveBooks.class);
+
+
+	private int maxPly = 12; 											// nply of the solved book from which the other books are derived
+	private int minPly = 8; 											// smallest nply of the derived books
+
+
+	public static void main(String[] args) throws InterruptedException {
+		Main_DeriveBooks app = new Main_DeriveBooks();
+
+		// initialize the logger
+		Log.initFromFile(AppConfig.dirLoggerConfig);
+		log.fine("starting connect4 n ply book derivation");
+
+		app.startApp();
+	}
+
+
+	private void startApp() {
+		// get the configuration
+		AppConfig appConfig = AppConfig.getInstance();
+		int threads = appConfig.getConfigValue("threads", 1);
+		int generatorPrefixPly = appConfig.getConfigValue("generatorPrefixPly", 4);
+
+		try {
+			// derive the books level by level, only the book one ply deeper needs to be kept in memory
+			NplyBook childBook = loadBook(maxPly);
+			for (int nply=maxPly-1; nply>=minPly; nply--) {
+				long startTime = System.currentTimeMillis();
+				long[] keys = new PositionGenerator(nply).generateKeys(threads, generatorPrefixPly);
+				byte[] scores = new BookDeriver(nply, childBook).deriveScores(keys, threads);
+				writeBook(nply, keys, scores);
+
+				childBook = new ArrayNplyBook(keys, scores); 		// the generated keys are sorted
+				log.info("derived the " + nply + "ply book, positions: " + keys.length + ", time needed " + (System.currentTimeMillis() - startTime) + "ms");
+			}
+
+		} catch (Exception e) {
+			log.severe("error deriving the n ply books: ", e);
+		}
+	}
+
+
+	/**
+	 * loads the book from which the other books are derived, the binary book is memory mapped if it exists,
+	 * otherwise the merged csv-file is parsed
+	 * @param nply			number of moves played in the positions of the book
+	 * @return				book with the scores of all nply positions
+	 * @throws IOException
+	 */
+	private NplyBook loadBook(int nply) throws IOException {
+		String bookFilePath = AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.book";
+		if (new File(bookFilePath).exists()) {
+			return MappedNplyBook.open(bookFilePath, nply);
+		}
+		return HashNplyBook.fromCsv(AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.csv");
+	}
+
+
+	/**
+	 * writes the derived positions to the merged csv-file and to the binary book, the files have the same
+	 * format as the ones created by Main_MergeCsvFiles
+	 * @param nply			number of moves played in the positions
+	 * @param keys			canonical keys of the positions
+	 * @param scores		scores of the positions in the same order as the keys
+	 * @throws IOException
+	 */
+	private void writeBook(int nply, long[] keys, byte[] scores) throws IOException {
+		new File(AppConfig.dirTranspositionTable).mkdirs();
+		String transpositionTableFile = AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.csv";
+		try (CSVPrinter csvPrinter = new CSVPrinter(new BufferedWriter(new FileWriter(transpositionTableFile)), CSVFormat.DEFAULT.withHeader("position", "disk_mask", "score"))) {
+			for (int i=0; i<keys.length; i++) {
+				Position position = Position.fromKey(keys[i]);
+				csvPrinter.printRecord(position.getPosition(), position.getDiskMask(), scores[i]);
+			}
+		}
+
+		MappedNplyBook.write(AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.book", nply, keys, scores);
+	}
+}
@@ -1,17 +1,18 @@
 package ch.wenkst.connect4.connect4_nply;
 
 import java.io.BufferedWriter;
-import java.io.FileReader;
+import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.List;
 
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 
 import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.MappedNplyBook;
 import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.io.SolvedFileMerger;
 import ch.wenkst.sw_utils.file.FileUtils;
 import ch.wenkst.sw_utils.logging.Log;
 
@@ -24,6 +25,7 @@ public class Main_MergeCsvFiles {
 	
 	
 	private int nply = 11; 												// all positions with this number of moves played will be solved
+	private boolean csvOutput = true; 									// false to only create the binary book
 		
 
 	public static void main(String[] args) throws InterruptedException {
@@ -39,60 +41,64 @@ public class Main_MergeCsvFiles {
 	
 	private void startApp() {
 		// get the configuration
-		AppConfig.getInstance();
+		AppConfig appConfig = AppConfig.getInstance();
+		int threads = appConfig.getConfigValue("threads", 1);
 		
-		mergePositions();
-	}
-	
-	
-	private void mergePositions() {
-		try {			
-			// create the csv-printer for the merged-file
-			String transpositionTableFile = AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.csv";
-			BufferedWriter writer = new BufferedWriter(new FileWriter(transpositionTableFile));
-			CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("position", "disk_mask", "score"));
-			csvPrinter.flush();
-			
-			// read out all positions
+		try {
+			// read and sort the solved files in parallel and merge them to one sorted list of positions
+			long startTime = System.currentTimeMillis();
 			String folderName = nply + "ply";
 			List<String> positionFiles = FileUtils.findFilesByPattern(AppConfig.dirSolvedPos + folderName, "", "csv");
-			for (String filePath : positionFiles) {
-				CSVFormat csvFileFormat = CSVFormat.DEFAULT.withHeader();
-				FileReader fileReader = new FileReader(filePath);
-				CSVParser csvFileParser = new CSVParser(fileReader, csvFileFormat);
-				
-				
-				// create a position to get the symmetry
-				for (CSVRecord csvRecord : csvFileParser) {	
-					long position = Long.parseLong(csvRecord.get("position"));
-					long diskMask = Long.parseLong(csvRecord.get("disk_mask"));
-					int score = Integer.parseInt(csvRecord.get("score"));
-					
-					// add the original position
-					csvPrinter.printRecord(position, diskMask, score);
-					
-					// add the mirror if it is different form the original position
-					Position p = new Position(position, diskMask);
-					Position pMirrored = p.mirror();
-					
-					if (pMirrored.toKey() != p.toKey()) {
-						csvPrinter.printRecord(pMirrored.getPosition(), pMirrored.getDiskMask(), score);
-					}
-				}
-				
-				// close the reader resources
-				if (csvFileParser != null) csvFileParser.close();
-				if (fileReader != null) fileReader.close();
-			}
+			SolvedFileMerger merger = new SolvedFileMerger(positionFiles);
+			long[] entries = merger.merge(threads);
+			report(merger, entries.length);
+			log.info("merged " + positionFiles.size() + " files, time needed " + (System.currentTimeMillis() - startTime) + "ms");
 			
-			// close the writer resources
-			if (writer != null) writer.close();
-			if (csvPrinter != null) csvPrinter.close();
+			new File(AppConfig.dirTranspositionTable).mkdirs();
+			if (csvOutput) {
+				writeCsv(entries);
+			}
+			String bookFile = AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.book";
+			MappedNplyBook.writeEntries(bookFile, nply, entries, entries.length);
+			log.info("finished to create the binary book: " + bookFile);
 			
-			log.info("finished to merge the positions");
-
 		} catch (Exception e) {
 			log.severe("error merging the solved position-files: ", e);
 		}
 	}
+	
+	
+	/**
+	 * logs the gaps and overlaps in the index ranges of the solved files and the duplicate positions
+	 * @param merger		merger that merged the solved files
+	 * @param size			number of merged positions
+	 */
+	private void report(SolvedFileMerger merger, int size) {
+		List<String> problems = merger.coverageProblems();
+		for (String problem : problems) {
+			log.warning(problem);
+		}
+		if (merger.conflicts() > 0) {
+			log.warning(merger.conflicts() + " positions have different scores in the solved files, first key: " + merger.firstConflictKey());
+		}
+		
+		log.info("positions: " + size + ", solved range: 0 to " + merger.coveredEnd() + ", duplicates: " + merger.duplicates() + ", coverage problems: " + problems.size());
+	}
+	
+	
+	/**
+	 * writes the merged positions to the csv-file in the order of their canonical key
+	 * @param entries		canonical key << 8 | score of the merged positions
+	 * @throws IOException
+	 */
+	private void writeCsv(long[] entries) throws IOException {
+		String transpositionTableFile = AppConfig.dirTranspositionTable + "connect4_" + nply + "ply.csv";
+		try (CSVPrinter csvPrinter = new CSVPrinter(new BufferedWriter(new FileWriter(transpositionTableFile), 1 << 20), CSVFormat.DEFAULT.withHeader("position", "disk_mask", "score"))) {
+			for (long entry : entries) {
+				Position position = Position.fromKey(entry >>> Byte.SIZE);
+				csvPrinter.printRecord(position.getPosition(), position.getDiskMask(), (byte) entry);
+			}
+		}
+		log.info("finished to write the merged csv-file: " + transpositionTableFile);
+	}
 }
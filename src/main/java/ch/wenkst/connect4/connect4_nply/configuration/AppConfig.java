@@ -44,6 +44,8 @@ public class AppConfig {
 	public static final String dirSolvedPos = Utils.getWorkDir() + sep + "solved_pos" + sep;
 	public static final String dirTranspositionTable = Utils.getWorkDir() + sep + "transposition_table_csvs" + sep;
 	public static final String dirTestSet = Utils.getWorkDir() + File.separator + "test_set" + File.separator;
+	public static final String dirTpSnapshots = Utils.getWorkDir() + sep + "tp_snapshots" + sep;
+	public static final String dirSolvedStore = Utils.getWorkDir() + sep + "solved_store" + sep;
 	
 	
 	// board parameters
@@ -57,7 +59,7 @@ public class AppConfig {
     
     
     // parameters for the solver
-    public static final int tpTableSize = 8388593; 			// would give 64Mb if the table would only use 64 bits
+    public static final int tpTableSize = 8388593; 			// prime number, gives 40Mb for the array table with 40 bits per entry and 32Mb for the bucket table (rounded down to 2^22 entries)
 	
     
     
@@ -90,7 +92,7 @@ public class AppConfig {
 			
 		} catch (Exception e) {
 			log.warning("error reading the configuration value " + key + ": " + e.getMessage());
-			return null;
+			return defaultVal;
 		}
 	}
 	
@@ -0,0 +1,33 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.util.Arrays;
+
+public class ArrayNplyBook implements NplyBook {
+	private long[] keys; 		// canonical keys of the positions sorted in ascending order
+	private byte[] scores; 		// scores of the positions in the same order as the keys
+
+
+	/**
+	 * nply book that keeps the sorted keys and the scores in two primitive arrays on the heap, the
+	 * positions are looked up with a binary search
+	 * @param keys		canonical keys of the positions sorted in ascending order without duplicates
+	 * @param scores	scores of the positions in the same order as the keys
+	 */
+	public ArrayNplyBook(long[] keys, byte[] scores) {
+		this.keys = keys;
+		this.scores = scores;
+	}
+
+
+	@Override
+	public byte get(long positionKey) {
+		int index = Arrays.binarySearch(keys, positionKey);
+		return index >= 0 ? scores[index] : notFound;
+	}
+
+
+	@Override
+	public long size() {
+		return keys.length;
+	}
+}
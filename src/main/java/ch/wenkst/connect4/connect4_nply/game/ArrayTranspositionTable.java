@@ -0,0 +1,94 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+
+public class ArrayTranspositionTable implements TranspositionTable {
+	private static final int keyBits = AppConfig.boardSize + AppConfig.boardWidth; 	// number of bits used by a position key
+
+	private int[] keys; 		// truncated keys of the positions, the modulo key is the index in the array
+	private byte[] values; 		// scores of the positions, 0 marks an empty entry
+	private int size; 			// total number of possible entries
+
+
+	/**
+	 * defines a transposition table with fixed size that is backed by two preallocated primitive arrays,
+	 * no objects are created when entries are added or read. modulo keys are used, if a collision occurs
+	 * the latest entry is kept.
+	 * only the lower 32 bits of the position key are saved. the key is still unique because of the chinese
+	 * remainder theorem as long as the size is odd and size * 2^32 is larger than all possible keys
+	 * @param size 		number of entries in the transposition table, should be a prime number
+	 */
+	public ArrayTranspositionTable(int size) {
+		if (size % 2 == 0 || (long) size << Integer.SIZE < 1L << keyBits) {
+			throw new IllegalArgumentException("the size of the transposition table needs to be odd and at least 2^" + (keyBits - Integer.SIZE) + ", size: " + size);
+		}
+
+		this.size = size;
+		keys = new int[size];
+		values = new byte[size];
+	}
+
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, (byte) 0);
+	}
+
+
+	/**
+	 * saves the entries with the truncated key in the upper and the score in the lower 8 bits of a snapshot entry
+	 */
+	@Override
+	public void save(String filePath) throws IOException {
+		TableSnapshot.write(filePath, TableSnapshot.arrayTable, 0, size, index -> (keys[(int) index] & 0xFFFFFFFFL) << Byte.SIZE | (values[(int) index] & 0xFF));
+	}
+
+
+	@Override
+	public void load(String filePath) throws IOException {
+		TableSnapshot.read(filePath, TableSnapshot.arrayTable, size, (index, entry) -> {
+			keys[(int) index] = (int) (entry >>> Byte.SIZE);
+			values[(int) index] = (byte) entry;
+		});
+	}
+
+
+	/**
+	 * returns the index of the passed position key
+	 * @param positionKey	unique key of the position
+	 * @return				index in the arrays
+	 */
+	private int index(long positionKey) {
+		return (int) (positionKey % size);
+	}
+
+
+	@Override
+	public boolean put(long positionKey, byte score) {
+		int i = index(positionKey);
+		boolean overwritten = values[i] != 0 && keys[i] != (int) positionKey;
+		keys[i] = (int) positionKey; 		// keep the lower 32 bits only
+		values[i] = score;
+		return overwritten;
+	}
+
+
+	@Override
+	public byte get(long positionKey) {
+		int i = index(positionKey);
+		if (keys[i] == (int) positionKey) { 	// avoid error due to collisions
+			return values[i];
+		} else {
+			return 0;
+		}
+	}
+
+
+	public int getSize() {
+		return size;
+	}
+}
@@ -0,0 +1,291 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+
+public class BucketTranspositionTable implements TranspositionTable {
+	private static final int keyBits = AppConfig.boardSize + AppConfig.boardWidth; 	// number of bits used by a position key
+	private static final long keyMask = (1L << keyBits) - 1;
+	private static final long hashMultiplier = 0x9E3779B97F4A7C15L; 		// odd, the multiplication is a bijection of the keys
+	private static final int bucketSize = 4; 					// entries per bucket, 4 entries of 8 bytes are half a cache line
+
+	// layout of an entry: upper bound (6 bits), lower bound (6 bits), work (6 bits), generation (8 bits), move (3 bits), hash remainder
+	private static final int lowerShift = 6;
+	private static final int workShift = 12;
+	private static final int generationShift = 18;
+	private static final int moveShift = 26;
+	private static final int remainderShift = 29;
+	private static final long boundMask = 0x3F; 				// mask of one bound, the bounds are saved as positive numbers
+	private static final long boundsMask = 0xFFF; 				// mask of both bounds, an entry without bounds is empty
+	private static final int maxWork = 0x3F;
+	private static final int generationMask = 0xFF;
+	private static final long moveMask = 0x7; 					// the move is saved as column + 1, 0 if it is not known
+
+	private long[] entries; 		// all buckets one after the other
+	private int bucketBits; 		// number of bits of the bucket index, the number of buckets is a power of 2
+	private long remainderMask; 	// mask of the hash bits that are not part of the bucket index
+	private int generation; 		// generation of the current search, older entries are replaced first
+	
+	private boolean cacheLastEntry; 	// false if the table is shared by many threads and the last entry cannot be cached
+	private long lastKey = -1; 		// key of the last found entry, the upper and the lower bound are read one after the other
+	private long lastEntry; 		// the last found entry
+
+
+	/**
+	 * defines a transposition table with fixed size that saves the upper and the lower bound of the positions.
+	 * the entries are grouped in small buckets that are read with one memory access. the key is multiplied with an odd number,
+	 * which mixes the bits and maps every key to a different hash. the upper bits of the hash are the index of
+	 * the bucket, the remaining bits are saved together with the bounds and the best move in one 64 bit word, the key
+	 * is therefore still unique. if the bucket is full the entry from an older generation or the entry that needed the least
+	 * work is replaced
+	 * @param size 		maximal number of entries in the transposition table, it is rounded down to a power of 2
+	 */
+	public BucketTranspositionTable(int size) {
+		this((long) size);
+		entries = new long[(int) getSize()];
+	}
+
+
+	/**
+	 * defines the layout of the table without allocating the entries, used by tables that keep
+	 * the entries in a different memory
+	 * @param size 		maximal number of entries in the transposition table, it is rounded down to a power of 2
+	 */
+	protected BucketTranspositionTable(long size) {
+		this(size, false);
+	}
+
+
+	/**
+	 * defines the layout of the table without allocating the entries. a table that is shared by many threads
+	 * does not cache the last found entry, the entries need to be read and written at once by the subclass
+	 * @param size 		maximal number of entries in the transposition table, it is rounded down to a power of 2
+	 * @param shared	true if the table is used by many threads at the same time
+	 */
+	protected BucketTranspositionTable(long size, boolean shared) {
+		cacheLastEntry = !shared;
+		bucketBits = 63 - Long.numberOfLeadingZeros(Math.max(size / bucketSize, 1));
+		if (keyBits - bucketBits > Long.SIZE - remainderShift) {
+			throw new IllegalArgumentException("the transposition table needs at least 2^" + (keyBits - Long.SIZE + remainderShift) + " buckets, size: " + size);
+		}
+
+		remainderMask = (1L << (keyBits - bucketBits)) - 1;
+	}
+	
+	
+	@Override
+	public void save(String filePath) throws IOException {
+		TableSnapshot.write(filePath, TableSnapshot.bucketTable, generation, getSize(), this::entry);
+	}
+
+
+	@Override
+	public void load(String filePath) throws IOException {
+		generation = TableSnapshot.read(filePath, TableSnapshot.bucketTable, getSize(), this::setEntry);
+		lastKey = -1;
+	}
+
+
+	/**
+	 * returns the hash of the passed key, different keys have different hashes
+	 * @param positionKey	unique key of the position
+	 * @return				the hash with the same number of bits as the key
+	 */
+	private long hash(long positionKey) {
+		return (positionKey * hashMultiplier) & keyMask;
+	}
+
+
+	/**
+	 * returns the entry at the passed index
+	 * @param index		index of the entry
+	 * @return
+	 */
+	protected long entry(long index) {
+		return entries[(int) index];
+	}
+
+
+	/**
+	 * sets the entry at the passed index
+	 * @param index		index of the entry
+	 * @param entry		the new entry
+	 */
+	protected void setEntry(long index, long entry) {
+		entries[(int) index] = entry;
+	}
+
+
+	/**
+	 * sets all entries to 0
+	 */
+	protected void clearEntries() {
+		Arrays.fill(entries, 0);
+	}
+
+
+	@Override
+	public void clear() {
+		clearEntries();
+		generation = 0;
+		lastKey = -1;
+	}
+
+
+	@Override
+	public void nextGeneration() {
+		generation = (generation + 1) & generationMask;
+	}
+
+
+	@Override
+	public boolean put(long positionKey, byte score) {
+		return put(positionKey, score, 0, -1);
+	}
+
+
+	@Override
+	public boolean put(long positionKey, byte score, int work, int move) {
+		return store(positionKey, score, 0, work, move);
+	}
+
+
+	@Override
+	public boolean putLower(long positionKey, byte score, int work, int move) {
+		return store(positionKey, score, lowerShift, work, move);
+	}
+
+
+	@Override
+	public byte get(long positionKey) {
+		long entry = find(positionKey);
+		return (byte) (entry & boundMask);
+	}
+
+
+	@Override
+	public byte getLower(long positionKey) {
+		long entry = find(positionKey);
+		return (byte) ((entry >>> lowerShift) & boundMask);
+	}
+
+
+	@Override
+	public int getMove(long positionKey) {
+		long entry = find(positionKey);
+		return (int) ((entry >>> moveShift) & moveMask) - 1;
+	}
+
+
+	/**
+	 * returns the entry of the passed position key
+	 * @param positionKey	unique key of the position
+	 * @return				the entry or 0 if the position is not part of the table
+	 */
+	private long find(long positionKey) {
+		if (cacheLastEntry && positionKey == lastKey) {
+			return lastEntry;
+		}
+		
+		long hash = hash(positionKey);
+		long remainder = hash & remainderMask;
+		long start = (hash >>> (keyBits - bucketBits)) * bucketSize;
+		long result = 0;
+		for (long i=start; i<start+bucketSize; i++) {
+			long entry = entry(i);
+			if ((entry & boundsMask) == 0) { 		// the bucket is filled from the start, all other entries are empty
+				break;
+			}
+			if (entry >>> remainderShift == remainder) {
+				result = entry;
+				break;
+			}
+		}
+
+		if (cacheLastEntry) {
+			lastKey = positionKey;
+			lastEntry = result;
+		}
+		return result;
+	}
+
+
+	/**
+	 * saves a bound of a position. if the position is already part of the bucket only the bound is updated
+	 * otherwise an empty entry or the entry that is least valuable is replaced. bounds that are not larger than 0
+	 * are not saved, 0 marks a missing bound and an entry without bounds is empty
+	 * @param positionKey	unique key of the position
+	 * @param bound			the bound to save
+	 * @param boundShift	position of the bound in the entry
+	 * @param work			measure for the work that was needed to find the bound
+	 * @param move			column of the best move, -1 to keep the saved move
+	 * @return				true if the entry of another position was overwritten
+	 */
+	private boolean store(long positionKey, byte bound, int boundShift, int work, int move) {
+		if (bound <= 0) {
+			return false;
+		}
+		
+		if (cacheLastEntry) {
+			lastKey = -1;
+		}
+		long hash = hash(positionKey);
+		long remainder = hash & remainderMask;
+		long start = (hash >>> (keyBits - bucketBits)) * bucketSize;
+		work = Math.min(work, maxWork);
+
+		long victim = start;
+		int victimValue = Integer.MAX_VALUE;
+		for (long i=start; i<start+bucketSize; i++) {
+			long entry = entry(i);
+			if ((entry & boundsMask) == 0) { 		// the bucket is filled from the start, the position is not part of it
+				victim = i;
+				break;
+			}
+			if (entry >>> remainderShift == remainder) {
+				// update the bound of the position, the other bound stays valid
+				int entryWork = Math.max(work, (int) (entry >>> workShift) & maxWork);
+				long otherBound = entry & boundsMask & ~(boundMask << boundShift);
+				long entryMove = move < 0 ? (entry >>> moveShift) & moveMask : move + 1;
+				setEntry(i, remainder << remainderShift | entryMove << moveShift | (long) generation << generationShift | (long) entryWork << workShift | otherBound | (bound & boundMask) << boundShift);
+				return false;
+			}
+
+			int value = replacementValue(entry);
+			if (value < victimValue) {
+				victim = i;
+				victimValue = value;
+			}
+		}
+
+		boolean overwritten = (entry(victim) & boundsMask) != 0;
+		setEntry(victim, remainder << remainderShift | (long) (move + 1) << moveShift | (long) generation << generationShift | (long) work << workShift | (bound & boundMask) << boundShift);
+		return overwritten;
+	}
+
+
+	/**
+	 * returns the value of an entry, the entry with the smallest value in a bucket is replaced first
+	 * @param entry		the entry, needs to be non-empty
+	 * @return			the work for entries from older generations and the work plus a constant that is
+	 * 					larger than all work values for entries of the current generation
+	 */
+	private int replacementValue(long entry) {
+		int value = (int) (entry >>> workShift) & maxWork;
+		if (((entry >>> generationShift) & generationMask) == generation) {
+			value += maxWork + 1;
+		}
+		return value;
+	}
+
+
+	/**
+	 * returns the number of entries in the table
+	 * @return
+	 */
+	public long getSize() {
+		return (long) bucketSize << bucketBits;
+	}
+}
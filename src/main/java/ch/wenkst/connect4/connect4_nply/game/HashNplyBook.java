@@ -0,0 +1,58 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.io.IOException;
+
+import ch.wenkst.connect4.connect4_nply.io.NumericCsvReader;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+
+public class HashNplyBook implements NplyBook {
+	private Long2ByteOpenHashMap positionMap; 		// key of the positions and their scores
+
+	
+	/**
+	 * nply book that keeps all positions in a hash map on the heap
+	 * @param positionMap	key of the positions and their scores
+	 */
+	public HashNplyBook(Long2ByteOpenHashMap positionMap) {
+		this.positionMap = positionMap;
+		positionMap.defaultReturnValue(notFound);
+	}
+	
+	
+	/**
+	 * reads the nply book from a merged csv-file with the columns position, disk_mask and score. the file is
+	 * parsed in parallel by all available processors
+	 * @param filePath		path of the csv-file
+	 * @return				the nply book
+	 * @throws IOException
+	 */
+	public static HashNplyBook fromCsv(String filePath) throws IOException {
+		long[][] columns;
+		try (NumericCsvReader reader = new NumericCsvReader(filePath, "position", "disk_mask", "score")) {
+			columns = reader.readAll(Runtime.getRuntime().availableProcessors());
+		}
+		
+		// add all positions to the position map, mirrored positions share the same entry
+		long[] positions = columns[0];
+		long[] diskMasks = columns[1];
+		long[] scores = columns[2];
+		Long2ByteOpenHashMap positionMap = new Long2ByteOpenHashMap(positions.length);
+		for (int i=0; i<positions.length; i++) {
+			positionMap.put(Position.canonicalKey(positions[i] + diskMasks[i]), (byte) scores[i]);
+		}
+		
+		return new HashNplyBook(positionMap);
+	}
+
+	
+	@Override
+	public byte get(long positionKey) {
+		return positionMap.get(positionKey);
+	}
+
+	
+	@Override
+	public long size() {
+		return positionMap.size();
+	}
+}
@@ -0,0 +1,238 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+
+/**
+ * nply book that is stored in a binary file which is memory mapped, the file has the following layout
+ * (little endian):
+ * - header: magic number, version, board width, board height, nply (all int), number of positions (long), padding
+ * - canonical keys of all positions sorted in ascending order (long), a position and its mirrored position share one key
+ * - scores of the positions in the same order as the keys (byte)
+ *
+ * the positions are looked up with a binary search in the mapped file, the book does not need to be parsed
+ * and all processes that use the same book share the page cache of the operating system
+ */
+public class MappedNplyBook implements NplyBook {
+	private static final int magic = 0x4334424B; 			// C4BK
+	private static final int version = 1; 					// version of the file format
+	private static final int headerSize = 32; 				// size of the header in bytes
+
+	private MappedByteBuffer buffer; 			// the mapped file
+	private int size; 							// number of positions in the book
+	private int scoreOffset; 					// offset of the first score in the file
+
+
+
+	private MappedNplyBook(MappedByteBuffer buffer, int size) {
+		this.buffer = buffer;
+		this.size = size;
+		scoreOffset = headerSize + size * Long.BYTES;
+	}
+
+
+	/**
+	 * memory maps the binary book file
+	 * @param filePath		path of the binary book file
+	 * @param nply			number of moves played in the positions of the book
+	 * @return				the mapped book
+	 * @throws IOException	if the file cannot be read or if it is not a valid book for the nply and the board size
+	 */
+	public static MappedNplyBook open(String filePath, int nply) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			// check the header
+			if (channel.size() < headerSize || buffer.getInt(0) != magic) {
+				throw new IOException("the file " + filePath + " is not a binary nply book");
+			}
+			if (buffer.getInt(4) != version) {
+				throw new IOException("the book " + filePath + " has version " + buffer.getInt(4) + ", expected version " + version);
+			}
+			if (buffer.getInt(8) != AppConfig.boardWidth || buffer.getInt(12) != AppConfig.boardHeight || buffer.getInt(16) != nply) {
+				throw new IOException("the book " + filePath + " does not contain " + nply + "ply positions of a " + AppConfig.boardWidth + "x" + AppConfig.boardHeight + " board");
+			}
+
+			long size = buffer.getLong(20);
+			if (headerSize + size * (Long.BYTES + 1) != channel.size()) {
+				throw new IOException("the book " + filePath + " is truncated, positions: " + size + ", file size: " + channel.size());
+			}
+
+			return new MappedNplyBook(buffer, (int) size);
+		}
+	}
+
+
+	/**
+	 * writes a binary book file, the positions are sorted by their key and duplicate keys are removed
+	 * @param filePath		path of the binary book file
+	 * @param nply			number of moves played in the positions of the book
+	 * @param keys			keys of the positions
+	 * @param scores		scores of the positions in the same order as the keys
+	 * @throws IOException
+	 */
+	public static void write(String filePath, int nply, long[] keys, byte[] scores) throws IOException {
+		// sort the positions, the keys only use 49 bits and the score can be packed in the lower 8 bits
+		long[] entries = new long[keys.length];
+		for (int i=0; i<keys.length; i++) {
+			entries[i] = keys[i] << Byte.SIZE | (scores[i] & 0xFF);
+		}
+		Arrays.parallelSort(entries);
+
+		int size = 0;
+		for (int i=0; i<entries.length; i++) {
+			if (i == 0 || entries[i] >>> Byte.SIZE != entries[size-1] >>> Byte.SIZE) {
+				entries[size++] = entries[i];
+			}
+		}
+
+		writeEntries(filePath, nply, entries, size);
+	}
+
+
+	/**
+	 * writes a binary book file from positions that are already sorted
+	 * @param filePath		path of the binary book file
+	 * @param nply			number of moves played in the positions of the book
+	 * @param entries		canonical key << 8 | score of the positions sorted in ascending order without
+	 * 						duplicate keys
+	 * @param size			number of entries to write
+	 * @throws IOException
+	 */
+	public static void writeEntries(String filePath, int nply, long[] entries, int size) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			writeBuffer.putInt(magic).putInt(version).putInt(AppConfig.boardWidth).putInt(AppConfig.boardHeight).putInt(nply).putLong(size);
+			writeBuffer.position(headerSize);
+
+			for (int i=0; i<size; i++) {
+				if (writeBuffer.remaining() < Long.BYTES) {
+					flush(channel, writeBuffer);
+				}
+				writeBuffer.putLong(entries[i] >>> Byte.SIZE);
+			}
+
+			for (int i=0; i<size; i++) {
+				if (!writeBuffer.hasRemaining()) {
+					flush(channel, writeBuffer);
+				}
+				writeBuffer.put((byte) entries[i]);
+			}
+			flush(channel, writeBuffer);
+		}
+	}
+
+
+	/**
+	 * writes the content of the buffer to the channel and clears the buffer
+	 * @param channel		file channel
+	 * @param writeBuffer	buffer to write
+	 * @throws IOException
+	 */
+	private static void flush(FileChannel channel, ByteBuffer writeBuffer) throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+
+	/**
+	 * copies all positions of the mapped file to the heap, the copy does not depend on the page cache
+	 * @return				book with the same positions that is kept on the heap
+	 */
+	public ArrayNplyBook toArrayBook() {
+		long[] keys = new long[size];
+		byte[] scores = new byte[size];
+		for (int i=0; i<size; i++) {
+			keys[i] = buffer.getLong(headerSize + i * Long.BYTES);
+			scores[i] = buffer.get(scoreOffset + i);
+		}
+		return new ArrayNplyBook(keys, scores);
+	}
+
+
+	/**
+	 * creates a book on the heap that only contains the results (win, draw or loss) of the positions
+	 * @return				book for the weak solver with the same positions
+	 */
+	public WeakNplyBook toWeakBook() {
+		WeakNplyBook weakBook = new WeakNplyBook(size, weakGapBytes());
+		for (int i=0; i<size; i++) {
+			weakBook.set(i, buffer.getLong(headerSize + i * Long.BYTES), buffer.get(scoreOffset + i));
+		}
+		weakBook.finish();
+		return weakBook;
+	}
+
+
+	/**
+	 * returns the heap memory of the weak book with the positions of the mapped file, see toWeakBook
+	 * @return				memory in bytes
+	 */
+	public long weakBookMemory() {
+		return WeakNplyBook.memory(size, weakGapBytes());
+	}
+
+
+	/**
+	 * returns the number of bytes that the weak book needs to save the differences of the keys
+	 * @return
+	 */
+	private long weakGapBytes() {
+		long bytes = 0;
+		long previousKey = 0;
+		for (int i=0; i<size; i++) {
+			long key = buffer.getLong(headerSize + i * Long.BYTES);
+			bytes += WeakNplyBook.gapBytes(i, previousKey, key);
+			previousKey = key;
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * returns the size of the mapped file
+	 * @return				size in bytes
+	 */
+	public long fileSize() {
+		return buffer.capacity();
+	}
+
+
+	@Override
+	public byte get(long positionKey) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long key = buffer.getLong(headerSize + middle * Long.BYTES);
+			if (key < positionKey) {
+				low = middle + 1;
+			} else if (key > positionKey) {
+				high = middle - 1;
+			} else {
+				return buffer.get(scoreOffset + middle);
+			}
+		}
+
+		return notFound;
+	}
+
+
+	@Override
+	public long size() {
+		return size;
+	}
+}
@@ -7,7 +7,7 @@ import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
  */
 public class MoveSorter {
 	private long[] moves = new long[AppConfig.boardWidth];
-	private byte[] scores = new byte[AppConfig.boardWidth];
+	private int[] scores = new int[AppConfig.boardWidth];
 	private int size = 0;
 
 
@@ -17,7 +17,7 @@ public class MoveSorter {
 	 * @param moveMask		move mask
 	 * @param score			the score of the move
 	 */
-	public void add(long move, byte score) {
+	public void add(long move, int score) {
 		int pos = size++;
 		for (; pos > 0 && scores[pos-1] > score; --pos) {
 			scores[pos] = scores[pos-1];
@@ -27,6 +27,33 @@ public class MoveSorter {
 		scores[pos] = score;
 	}
 
+	/**
+	 * moves the passed move to the end of the list so that it is explored first, the order of the
+	 * other moves is kept. nothing is changed if the move is not part of the move sorter
+	 * @param move			move mask
+	 */
+	public void moveFirst(long move) {
+		for (int pos=0; pos<size; pos++) {
+			if (moves[pos] == move) {
+				int score = scores[pos];
+				for (; pos < size-1; pos++) {
+					moves[pos] = moves[pos+1];
+					scores[pos] = scores[pos+1];
+				}
+				moves[pos] = move;
+				scores[pos] = score;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * removes all moves from the move sorter so that it can be used again
+	 */
+	public void reset() {
+		size = 0;
+	}
+
 	public long[] getMoves() {
 		return moves;
 	}
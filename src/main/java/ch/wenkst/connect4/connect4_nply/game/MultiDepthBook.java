@@ -0,0 +1,73 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+
+/**
+ * holds the nply books of several depths behind one interface. a search that passes a depth with a book
+ * gets the exact score of the position there, deeper books only answer for the positions that are missing
+ * in the books above, e.g. positions in which a player can win with the next move
+ */
+public class MultiDepthBook {
+	private NplyBook[] books = new NplyBook[AppConfig.boardSize + 1]; 		// book for every number of played moves, null if there is none
+	private int minPly = -1; 													// smallest nply with a book, -1 if there is no book
+
+
+	/**
+	 * adds the book with the positions of the passed nply, an existing book of this nply is replaced
+	 * @param nply		number of moves played in the positions of the book
+	 * @param book		book with the scores of the nply positions
+	 */
+	public void add(int nply, NplyBook book) {
+		books[nply] = book;
+		if (minPly < 0 || nply < minPly) {
+			minPly = nply;
+		}
+	}
+
+
+	/**
+	 * returns the score of the position with the passed key
+	 * @param positionKey 	unique key of the position
+	 * @param moveCount		number of moves played in the position
+	 * @return 				the score of the position or NplyBook.notFound if there is no book for the
+	 * 						move count or if the position is not part of it
+	 */
+	public byte get(long positionKey, int moveCount) {
+		NplyBook book = books[moveCount];
+		return book == null ? NplyBook.notFound : book.get(positionKey);
+	}
+
+
+	/**
+	 * returns true if there is a book for the passed number of played moves
+	 * @param moveCount		number of moves played in the positions
+	 * @return
+	 */
+	public boolean contains(int moveCount) {
+		return books[moveCount] != null;
+	}
+
+
+	/**
+	 * returns true if the book does not contain the positions of any nply
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return minPly < 0;
+	}
+
+
+	/**
+	 * returns the number of positions of all depths
+	 * @return
+	 */
+	public long size() {
+		long size = 0;
+		for (NplyBook book : books) {
+			if (book != null) {
+				size += book.size();
+			}
+		}
+		return size;
+	}
+}
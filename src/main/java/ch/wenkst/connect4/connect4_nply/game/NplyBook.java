@@ -0,0 +1,23 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+/**
+ * holds the exact scores of all solved positions with n moves played
+ */
+public interface NplyBook {
+	public static final byte notFound = Byte.MIN_VALUE; 		// returned if a position is not part of the book
+
+	
+	/**
+	 * returns the score of the position with the passed key
+	 * @param positionKey 	unique key of the position
+	 * @return 				the score of the position or notFound if the position is not part of the book
+	 */
+	public byte get(long positionKey);
+
+
+	/**
+	 * returns the number of positions in the book
+	 * @return
+	 */
+	public long size();
+}
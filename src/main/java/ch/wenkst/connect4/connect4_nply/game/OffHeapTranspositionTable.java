@@ -0,0 +1,101 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class OffHeapTranspositionTable extends BucketTranspositionTable {
+	public static final int defaultPageBits = 24; 		// number of entries per page as power of 2, 128Mb per page
+	private static final VarHandle pageHandle = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private boolean shared; 			// true if the entries are read and written at once because many threads use the table
+	private int pageBits; 				// number of entries per page as power of 2
+	private long pageMask;
+	private ByteBuffer[] pages; 		// the entries, split into pages because a buffer is indexed with an int
+
+
+	/**
+	 * defines a bucket transposition table whose entries are saved outside of the java heap. the memory is
+	 * allocated in direct buffers of fixed size, the table can therefore be larger than an array and the garbage
+	 * collector does not need to scan it. the direct memory is limited by the jvm option -XX:MaxDirectMemorySize
+	 * which is by default equal to the maximal heap size
+	 * @param memory		memory of the table in bytes, the number of entries is rounded down to a power of 2
+	 */
+	public OffHeapTranspositionTable(long memory) {
+		this(memory, defaultPageBits);
+	}
+
+
+	/**
+	 * defines an off-heap bucket transposition table with pages of the passed size
+	 * @param memory		memory of the table in bytes, the number of entries is rounded down to a power of 2
+	 * @param pageBits		number of entries per page as power of 2, at least 2 to keep the buckets in one page
+	 */
+	public OffHeapTranspositionTable(long memory, int pageBits) {
+		this(memory, pageBits, false);
+	}
+
+
+	/**
+	 * defines an off-heap bucket transposition table with pages of the passed size. a shared table can be used by
+	 * many threads at the same time without any locks, the entries are read and written at once in the same way as
+	 * in the shared transposition table on the heap
+	 * @param memory		memory of the table in bytes, the number of entries is rounded down to a power of 2
+	 * @param pageBits		number of entries per page as power of 2, at least 2 to keep the buckets in one page
+	 * @param shared		true if the table is used by many threads at the same time
+	 */
+	public OffHeapTranspositionTable(long memory, int pageBits, boolean shared) {
+		super(memory / Long.BYTES, shared);
+		this.shared = shared;
+		this.pageBits = pageBits;
+		pageMask = (1L << pageBits) - 1;
+
+		long size = getSize();
+		int pageCount = (int) ((size + pageMask) >>> pageBits);
+		pages = new ByteBuffer[pageCount];
+		for (int i=0; i<pageCount; i++) {
+			int pageSize = (int) Math.min(size - ((long) i << pageBits), 1L << pageBits);
+			pages[i] = ByteBuffer.allocateDirect(pageSize * Long.BYTES).order(ByteOrder.nativeOrder());
+		}
+	}
+
+
+	@Override
+	protected long entry(long index) {
+		ByteBuffer page = pages[(int) (index >>> pageBits)];
+		int offset = (int) (index & pageMask) << 3;
+		return shared ? (long) pageHandle.getOpaque(page, offset) : page.getLong(offset);
+	}
+
+
+	@Override
+	protected void setEntry(long index, long entry) {
+		ByteBuffer page = pages[(int) (index >>> pageBits)];
+		int offset = (int) (index & pageMask) << 3;
+		if (shared) {
+			pageHandle.setOpaque(page, offset, entry);
+		} else {
+			page.putLong(offset, entry);
+		}
+	}
+
+
+	@Override
+	protected void clearEntries() {
+		for (ByteBuffer page : pages) {
+			for (int i=0; i<page.capacity(); i+=Long.BYTES) {
+				page.putLong(i, 0);
+			}
+		}
+	}
+
+
+	/**
+	 * returns the memory of the table in bytes
+	 * @return
+	 */
+	public long getMemory() {
+		return getSize() * Long.BYTES;
+	}
+}
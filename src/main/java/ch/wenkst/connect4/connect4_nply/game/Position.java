@@ -19,6 +19,18 @@ import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
 public class Position implements Serializable {	
 	private static long bottomMask = bottomRowMask(); 									// mask of bottom row
 	private static long boardMask = bottomMask * ((1L << AppConfig.boardHeight)-1);		// mask of the whole board
+	private static final long mirrorColumnMask = (1L << (AppConfig.boardHeight+1))-1; 		// mask of the first column including the bit above
+	
+	// masks of the left column of the three column pairs and of the center column of the 7 columns, every left column
+	// is shifted by the distance to its mirrored column
+	private static final int columnBits = AppConfig.boardHeight+1;
+	private static final long mirrorMask0 = mirrorColumnMask;
+	private static final long mirrorMask1 = mirrorColumnMask << columnBits;
+	private static final long mirrorMask2 = mirrorColumnMask << 2*columnBits;
+	private static final long centerMask = mirrorColumnMask << (AppConfig.boardWidth/2)*columnBits;
+	private static final int mirrorShift0 = (AppConfig.boardWidth - 1) * columnBits;
+	private static final int mirrorShift1 = (AppConfig.boardWidth - 3) * columnBits;
+	private static final int mirrorShift2 = (AppConfig.boardWidth - 5) * columnBits;
 
 	private long position = 0; 				// disks of the current player
 	private long diskMask = 0; 				// non-empty spots on the board
@@ -73,6 +85,16 @@ public class Position implements Serializable {
 	}
 
 
+	/**
+	 * takes back the passed move mask, it needs to be the last move that was played
+	 * @param moveMask 	move mask
+	 */
+	public void undo(long moveMask) {
+		diskMask ^= moveMask; 						// remove the move from the disk mask
+		position ^= diskMask; 						// get the position of the previous player
+	}
+
+
 	/**
 	 * creates a position form the passed sequence of moves (starting from 1)
 	 * @param moveSequence		a sequence of moves that define a position
@@ -159,6 +181,47 @@ public class Position implements Serializable {
 	}
 	
 	
+	/**
+	 * creates the position of the passed key. in every column the key is one smaller than the power of 2
+	 * above the highest disk plus the disks of the current player, the highest bit of the key plus one
+	 * therefore marks the height of the column
+	 * @param key 		unique key of the position
+	 * @return 			the position
+	 */
+	public static Position fromKey(long key) {
+		long heightBits = key + bottomMask;
+		long diskMask = 0;
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			long column = heightBits & (columnMask(col) | topMask(col) << 1);
+			diskMask |= Long.highestOneBit(column) - bottomMask(col);
+		}
+		
+		return new Position(key - diskMask, diskMask);
+	}
+	
+	
+	/**
+	 * returns the same key for a position and its mirrored position, it is the smaller of the two keys.
+	 * the key can be mirrored directly because the sum of the position and the disk mask never carries
+	 * into the next column
+	 * @return 		integer key representing the position and its mirrored position
+	 */
+	public long toCanonicalKey() {
+		long key = position + diskMask;
+		return Math.min(key, mirrorBoardNumber(key));
+	}
+	
+	
+	/**
+	 * returns the canonical key of the passed position key
+	 * @param key 		unique key of a position
+	 * @return 			the smaller of the key and the mirrored key
+	 */
+	public static long canonicalKey(long key) {
+		return Math.min(key, mirrorBoardNumber(key));
+	}
+	
+	
 	/**
 	 * returns a position that is mirrored on the y-axis
 	 * @return
@@ -170,30 +233,17 @@ public class Position implements Serializable {
 	
 	
 	/**
-	 * mirrors the passed number representing a board 
-	 * @param number 	any number representing some board configuration (position, board mask, disk maksk etc)
+	 * mirrors the passed number representing a board, every column including the bit above the top row
+	 * is swapped with the mirrored column. the three column pairs of the board are swapped with fixed masks
+	 * and shifts and the center column stays in place, the mirroring therefore does not need any loop or branch
+	 * @param number 	any number representing some board configuration (position, disk mask, key etc)
 	 * @return
 	 */
-	private long mirrorBoardNumber(long number) {		
-		long mirroredNumber = 0;
-		
-		// left half of the board
-		for (int col=0; col < (AppConfig.boardWidth+1)/2 - 1; col++) {
-			mirroredNumber += (number & columnMask(col)) << ((AppConfig.boardWidth - (2*col + 1)) * (AppConfig.boardHeight+1));
-		}
-		
-		// right half of the board
-		for (int col=0; col < (AppConfig.boardWidth+1)/2 - 1; col++) {
-			mirroredNumber += (number & columnMask(AppConfig.boardWidth - col-1)) >> ((AppConfig.boardWidth - (2*col + 1)) * (AppConfig.boardHeight+1));
-		}
-		
-		// center row
-		if (AppConfig.boardWidth % 2 != 0) {
-			int col = (AppConfig.boardWidth)/2;
-			mirroredNumber += (number & columnMask(col));
-		}
-		
-		return mirroredNumber;
+	private static long mirrorBoardNumber(long number) {
+		return (number & centerMask)
+				| (number & mirrorMask0) << mirrorShift0 | (number >>> mirrorShift0) & mirrorMask0
+				| (number & mirrorMask1) << mirrorShift1 | (number >>> mirrorShift1) & mirrorMask1
+				| (number & mirrorMask2) << mirrorShift2 | (number >>> mirrorShift2) & mirrorMask2;
 	}
 	
 	
@@ -387,7 +437,7 @@ public class Position implements Serializable {
 	 * @param col 	board column
 	 * @return
 	 */
-	private long topMask(int col) {
+	private static long topMask(int col) {
 		return (1L << (AppConfig.boardHeight - 1)) << col*(AppConfig.boardHeight+1);
 	}
 
@@ -397,7 +447,7 @@ public class Position implements Serializable {
 	 * @param col 	board column
 	 * @return
 	 */
-	private long bottomMask(int col) {
+	private static long bottomMask(int col) {
 		return 1L << col*(AppConfig.boardHeight+1);
 	}
 	
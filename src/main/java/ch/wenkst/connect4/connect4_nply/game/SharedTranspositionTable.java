@@ -0,0 +1,44 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+public class SharedTranspositionTable extends BucketTranspositionTable {
+	private static final VarHandle entryHandle = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private long[] entries; 		// all buckets one after the other
+
+
+	/**
+	 * defines a bucket transposition table with fixed size that can be used by many threads at the same time
+	 * without any locks. it saves the lower and the upper bound, the best move and the generation in the same
+	 * layout as the bucket table. every entry is one 64 bit word with the hash remainder of the key, which is always
+	 * read and written at once. a reader therefore either sees the whole old or the whole new entry and validates
+	 * it with the remainder. two threads that update the same bucket at the same time can lose one of the
+	 * updates, all saved bounds stay valid
+	 * @param size 		maximal number of entries in the transposition table, it is rounded down to a power of 2
+	 */
+	public SharedTranspositionTable(int size) {
+		super(size, true);
+		entries = new long[(int) getSize()];
+	}
+
+
+	@Override
+	protected long entry(long index) {
+		return (long) entryHandle.getOpaque(entries, (int) index);
+	}
+
+
+	@Override
+	protected void setEntry(long index, long entry) {
+		entryHandle.setOpaque(entries, (int) index, entry);
+	}
+
+
+	@Override
+	protected void clearEntries() {
+		Arrays.fill(entries, 0);
+	}
+}
@@ -0,0 +1,315 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+
+/**
+ * persistent store of exactly solved positions of any ply. the positions are saved with their canonical key
+ * in two files of the store directory (little endian):
+ * - positions.idx: header (magic number, version, board width, board height (all int), number of positions (long), padding)
+ *   followed by the entries sorted in ascending order, an entry is the key shifted by 8 bits and the score (long)
+ * - positions.log: the same header with 0 positions followed by the entries in the order in which they were added
+ *
+ * new positions are only appended to the log. when the store is opened the log is merged into the index, which is
+ * memory mapped and searched with a binary search, and truncated. an incomplete last entry of the log, e.g. of a
+ * process that was killed while writing it, is ignored and overwritten by the next entry. the store can be shared by
+ * all solvers of a process and can be opened by many processes at the same time. every process maps the index
+ * read-only, only the appends to the log and the merges into the index are serialized with a lock of the log file.
+ * a process finds the positions of the other processes after they are merged into the index
+ */
+public class SolvedPositionStore {
+	public static final byte notFound = Byte.MIN_VALUE; 		// returned if a position is not part of the store
+	public static final int defaultRecentLimit = 1 << 20; 		// number of added positions after which they are merged into the index
+	
+	private static final int magic = 0x43345350; 			// C4SP
+	private static final int version = 1; 					// version of the file format
+	private static final int headerSize = 32; 				// size of the header in bytes
+	private static final int scoreBits = Byte.SIZE; 		// number of bits used for the score in an entry
+	
+	private String indexPath; 					// path of the index file
+	private String logPath; 					// path of the log file
+	private int recentLimit; 					// number of positions in the recent map after which the log is merged into the index
+	private MappedByteBuffer index; 			// the mapped index file
+	private int indexSize; 						// number of positions in the index
+	private Long2ByteOpenHashMap recent; 		// positions added to the log since the index was mapped
+	private FileChannel log; 					// channel to append the positions to the log, it is locked for every change
+	private ByteBuffer entryBuffer; 			// buffer to write one entry to the log
+
+
+	private SolvedPositionStore(String dirPath, int recentLimit) {
+		indexPath = dirPath + "positions.idx";
+		logPath = dirPath + "positions.log";
+		this.recentLimit = recentLimit;
+		recent = new Long2ByteOpenHashMap();
+		recent.defaultReturnValue(notFound);
+		entryBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+
+	/**
+	 * opens the store in the passed directory, see open(String, int)
+	 * @param dirPath		directory of the store
+	 * @return				the opened store
+	 * @throws IOException	if the files cannot be read or if they are not a store for the board size
+	 */
+	public static SolvedPositionStore open(String dirPath) throws IOException {
+		return open(dirPath, defaultRecentLimit);
+	}
+
+
+	/**
+	 * opens the store in the passed directory, the files are created if they do not exist. the positions of the log
+	 * are merged into the index. a process should only open the store once and share it, the locks of the log are
+	 * held by the process
+	 * @param dirPath		directory of the store
+	 * @param recentLimit	number of positions added by this store after which the log is merged into the index
+	 * @return				the opened store
+	 * @throws IOException	if the files cannot be read or if they are not a store for the board size
+	 */
+	public static SolvedPositionStore open(String dirPath, int recentLimit) throws IOException {
+		new File(dirPath).mkdirs();
+		SolvedPositionStore store = new SolvedPositionStore(dirPath, recentLimit);
+		store.log = FileChannel.open(Paths.get(store.logPath), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try (FileLock lock = store.log.lock()) {
+			if (store.log.size() == 0) {
+				// new log, the first process that gets the lock writes the header
+				ByteBuffer header = header(0);
+				while (header.hasRemaining()) {
+					store.log.write(header, store.log.size());
+				}
+				store.log.force(true);
+			}
+			store.compact();
+
+		} catch (IOException e) {
+			store.log.close();
+			throw e;
+		}
+		return store;
+	}
+
+
+	/**
+	 * merges the positions of the log into the index and truncates the log, the caller holds the lock of the log.
+	 * the new index is written to a temporary file that replaces the old index as soon as it is complete, the other
+	 * processes keep their mapping of the old index. the log is truncated in place because the other processes
+	 * append to the same file, if the process stops before the log is truncated the positions are just merged
+	 * again at the next start
+	 * @throws IOException
+	 */
+	private void compact() throws IOException {
+		long[] indexEntries = readEntries(indexPath);
+		long[] logEntries = readEntries(logPath);
+		
+		if (logEntries.length > 0 || !new File(indexPath).exists()) {
+			long[] entries = Arrays.copyOf(indexEntries, indexEntries.length + logEntries.length);
+			System.arraycopy(logEntries, 0, entries, indexEntries.length, logEntries.length);
+			Arrays.parallelSort(entries);
+			
+			// remove the duplicate keys
+			int size = 0;
+			for (int i=0; i<entries.length; i++) {
+				if (size == 0 || entries[i] >>> scoreBits != entries[size-1] >>> scoreBits) {
+					entries[size++] = entries[i];
+				}
+			}
+			
+			writeEntries(indexPath, entries, size);
+		}
+		log.truncate(headerSize);
+		log.force(true);
+		
+		try (FileChannel channel = FileChannel.open(Paths.get(indexPath), StandardOpenOption.READ)) {
+			index = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			index.order(ByteOrder.LITTLE_ENDIAN);
+			indexSize = (int) ((channel.size() - headerSize) / Long.BYTES);
+		}
+		recent.clear();
+		recent.trim();
+	}
+
+
+	/**
+	 * reads all entries of an index or a log file, an incomplete last entry is ignored
+	 * @param filePath		path of the file
+	 * @return				the entries of the file or an empty array if the file does not exist
+	 * @throws IOException	if the file is not an index or a log of a store for the board size
+	 */
+	private static long[] readEntries(String filePath) throws IOException {
+		if (!new File(filePath).exists()) {
+			return new long[0];
+		}
+		
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			
+			// check the header
+			if (channel.size() < headerSize || buffer.getInt(0) != magic) {
+				throw new IOException("the file " + filePath + " is not part of a solved position store");
+			}
+			if (buffer.getInt(4) != version) {
+				throw new IOException("the file " + filePath + " has version " + buffer.getInt(4) + ", expected version " + version);
+			}
+			if (buffer.getInt(8) != AppConfig.boardWidth || buffer.getInt(12) != AppConfig.boardHeight) {
+				throw new IOException("the file " + filePath + " does not contain positions of a " + AppConfig.boardWidth + "x" + AppConfig.boardHeight + " board");
+			}
+			
+			int size = (int) ((channel.size() - headerSize) / Long.BYTES);
+			long[] entries = new long[size];
+			buffer.position(headerSize);
+			buffer.asLongBuffer().get(entries);
+			return entries;
+		}
+	}
+
+
+	/**
+	 * writes the header and the passed entries to a temporary file that replaces the passed file once it is on the disk
+	 * @param filePath		path of the file
+	 * @param entries		the entries to write
+	 * @param size			number of entries to write
+	 * @throws IOException
+	 */
+	private static void writeEntries(String filePath, long[] entries, int size) throws IOException {
+		Path tempPath = Paths.get(filePath + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = header(size);
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			
+			ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i=0; i<size; i++) {
+				if (writeBuffer.remaining() < Long.BYTES) {
+					flush(channel, writeBuffer);
+				}
+				writeBuffer.putLong(entries[i]);
+			}
+			flush(channel, writeBuffer);
+			channel.force(true);
+		}
+		
+		Files.move(tempPath, Paths.get(filePath), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * returns the header of an index or a log file
+	 * @param size			number of positions in the file, 0 for the log
+	 * @return				buffer with the header that is ready to be written
+	 */
+	private static ByteBuffer header(long size) {
+		ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(magic).putInt(version).putInt(AppConfig.boardWidth).putInt(AppConfig.boardHeight).putLong(size);
+		header.clear();
+		return header;
+	}
+
+
+	/**
+	 * writes the content of the buffer to the channel and clears the buffer
+	 * @param channel		file channel
+	 * @param writeBuffer	buffer to write
+	 * @throws IOException
+	 */
+	private static void flush(FileChannel channel, ByteBuffer writeBuffer) throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+
+	/**
+	 * returns the exact score of a position
+	 * @param positionKey	canonical key of the position
+	 * @return				the score of the position or notFound if the position is not part of the store
+	 */
+	public synchronized byte get(long positionKey) {
+		byte score = recent.get(positionKey);
+		if (score != notFound) {
+			return score;
+		}
+		
+		int low = 0;
+		int high = indexSize - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long key = index.getLong(headerSize + middle * Long.BYTES) >>> scoreBits;
+			if (key < positionKey) {
+				low = middle + 1;
+			} else if (key > positionKey) {
+				high = middle - 1;
+			} else {
+				return (byte) index.getLong(headerSize + middle * Long.BYTES);
+			}
+		}
+		
+		return notFound;
+	}
+
+
+	/**
+	 * appends the exact score of a position to the log, positions that are already part of the store are not added again.
+	 * the log is locked during the append, once the limit of the recent positions is reached the log is merged into the index
+	 * @param positionKey	canonical key of the position
+	 * @param score			exact score of the position
+	 * @throws IOException
+	 */
+	public synchronized void put(long positionKey, byte score) throws IOException {
+		if (get(positionKey) != notFound) {
+			return;
+		}
+		
+		try (FileLock lock = log.lock()) {
+			// the entry is written at once after the last complete entry, an incomplete entry is overwritten
+			long position = headerSize + (log.size() - headerSize) / Long.BYTES * Long.BYTES;
+			entryBuffer.clear();
+			entryBuffer.putLong(positionKey << scoreBits | (score & 0xFF));
+			entryBuffer.flip();
+			while (entryBuffer.hasRemaining()) {
+				position += log.write(entryBuffer, position);
+			}
+			recent.put(positionKey, score);
+			
+			if (recent.size() >= recentLimit) {
+				compact();
+			}
+		}
+	}
+
+
+	/**
+	 * returns the number of positions in the store
+	 * @return
+	 */
+	public synchronized long size() {
+		return indexSize + recent.size();
+	}
+
+
+	/**
+	 * closes the log, the store cannot be used anymore
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		log.close();
+	}
+}
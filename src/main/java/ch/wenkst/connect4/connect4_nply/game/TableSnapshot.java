@@ -0,0 +1,157 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongUnaryOperator;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+
+/**
+ * binary snapshot of the entries of a transposition table, the file has the following layout (little endian):
+ * - header: magic number, version, board width, board height, table type, generation (all int), number of entries (long), padding
+ * - all entries of the table in the order of their index (long)
+ *
+ * a snapshot can only be loaded into a table of the same type and size, the entries are saved together
+ * with their index and a table with a different size would interpret them wrongly
+ */
+public class TableSnapshot {
+	public static final int bucketTable = 1; 				// type of the bucket transposition tables, including the shared and the off-heap table
+	// type 2 was the shared table with modulo keys, its snapshots cannot be loaded anymore
+	public static final int arrayTable = 3; 				// type of the array transposition table
+	public static final int hashMapTable = 4; 				// type of the hash map transposition table
+	
+	private static final int magic = 0x43345454; 			// C4TT
+	private static final int version = 1; 					// version of the file format
+	private static final int headerSize = 32; 				// size of the header in bytes
+	private static final int bufferSize = 1 << 20; 			// size of the buffer that is used to read and write the file
+
+	
+	/**
+	 * consumes the entries that are read from a snapshot file
+	 */
+	public interface EntryConsumer {
+		public void accept(long index, long entry);
+	}
+	
+	
+	private TableSnapshot() {
+		
+	}
+
+
+	/**
+	 * writes a snapshot of a table. the entries are first written to a temporary file that is renamed as soon as it
+	 * is complete, this way an existing snapshot is only replaced by a complete snapshot
+	 * @param filePath		path of the snapshot file
+	 * @param tableType		type of the table
+	 * @param generation	generation of the table, 0 for tables without generations
+	 * @param size			number of entries of the table
+	 * @param entries		returns the entry of an index
+	 * @throws IOException
+	 */
+	public static void write(String filePath, int tableType, int generation, long size, LongUnaryOperator entries) throws IOException {
+		Path tempPath = Paths.get(filePath + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer writeBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+			writeBuffer.putInt(magic).putInt(version).putInt(AppConfig.boardWidth).putInt(AppConfig.boardHeight).putInt(tableType).putInt(generation).putLong(size);
+			writeBuffer.position(headerSize);
+			
+			for (long i=0; i<size; i++) {
+				if (writeBuffer.remaining() < Long.BYTES) {
+					flush(channel, writeBuffer);
+				}
+				writeBuffer.putLong(entries.applyAsLong(i));
+			}
+			flush(channel, writeBuffer);
+			channel.force(true);
+		}
+		
+		Files.move(tempPath, Paths.get(filePath), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+
+	/**
+	 * reads a snapshot of a table
+	 * @param filePath		path of the snapshot file
+	 * @param tableType		type of the table
+	 * @param size			number of entries of the table
+	 * @param entries		consumes the entries in the order of their index
+	 * @return				the generation of the table
+	 * @throws IOException	if the file cannot be read or if it is not a snapshot of a table with the same type and size
+	 */
+	public static int read(String filePath, int tableType, long size, EntryConsumer entries) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			ByteBuffer readBuffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+			readBuffer.limit(headerSize);
+			fill(channel, readBuffer);
+			
+			// check the header
+			if (readBuffer.remaining() < headerSize || readBuffer.getInt(0) != magic) {
+				throw new IOException("the file " + filePath + " is not a transposition table snapshot");
+			}
+			if (readBuffer.getInt(4) != version) {
+				throw new IOException("the snapshot " + filePath + " has version " + readBuffer.getInt(4) + ", expected version " + version);
+			}
+			if (readBuffer.getInt(8) != AppConfig.boardWidth || readBuffer.getInt(12) != AppConfig.boardHeight) {
+				throw new IOException("the snapshot " + filePath + " is not a snapshot of a " + AppConfig.boardWidth + "x" + AppConfig.boardHeight + " board");
+			}
+			if (readBuffer.getInt(16) != tableType || readBuffer.getLong(24) != size) {
+				throw new IOException("the snapshot " + filePath + " has type " + readBuffer.getInt(16) + " and " + readBuffer.getLong(24) + 
+						" entries, expected type " + tableType + " and " + size + " entries");
+			}
+			if (headerSize + size * Long.BYTES != channel.size()) {
+				throw new IOException("the snapshot " + filePath + " is truncated, entries: " + size + ", file size: " + channel.size());
+			}
+			int generation = readBuffer.getInt(20);
+			
+			long index = 0;
+			while (index < size) {
+				readBuffer.clear();
+				fill(channel, readBuffer);
+				while (readBuffer.remaining() >= Long.BYTES) {
+					entries.accept(index++, readBuffer.getLong());
+				}
+			}
+			
+			return generation;
+		}
+	}
+
+
+	/**
+	 * writes the content of the buffer to the channel and clears the buffer
+	 * @param channel		file channel
+	 * @param writeBuffer	buffer to write
+	 * @throws IOException
+	 */
+	private static void flush(FileChannel channel, ByteBuffer writeBuffer) throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining()) {
+			channel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+
+	/**
+	 * reads from the channel until the buffer is full or the end of the file is reached and flips the buffer
+	 * @param channel		file channel
+	 * @param readBuffer	buffer to fill
+	 * @throws IOException
+	 */
+	private static void fill(FileChannel channel, ByteBuffer readBuffer) throws IOException {
+		while (readBuffer.hasRemaining()) {
+			if (channel.read(readBuffer) < 0) {
+				break;
+			}
+		}
+		readBuffer.flip();
+	}
+}
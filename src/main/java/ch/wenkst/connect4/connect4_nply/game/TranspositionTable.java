@@ -1,84 +1,104 @@
 package ch.wenkst.connect4.connect4_nply.game;
 
-import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
-import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import java.io.IOException;
 
-public class TranspositionTable {
-	private Int2ObjectOpenHashMap<Entry> entries; 	// all entries in the table, the modulo key is the index if the array
-	private int size; 										// total number of possible entries
-	
+/**
+ * cache for the bounds found by the solver. the score is saved as a positive number, 0 is
+ * reserved for positions that are not part of the table. all tables save the upper bound, tables
+ * that also save the lower bound, the best move and replace entries by the work needed to find them
+ * override the default methods
+ */
+public interface TranspositionTable {
+
+	/**
+	 * adds a position to the transposition table, in case of a collision the new value is kept
+	 * @param positionKey 		unique key of the position
+	 * @param score 			the score of the position, needs to be larger than 0
+	 * @return 					true if the entry of another position was overwritten
+	 */
+	public boolean put(long positionKey, byte score);
 
 
 	/**
-	 * defines a transposition table with fixed size, modulo keys are used. if a collision occurs the latest entry is kept
-	 * more that one positions could have the same modulo key therefore the unique key of the position is kept as well
-	 * @param size 		number of entries in the transposition table
+	 * returns the value of a position for the passed position key
+	 * @param positionKey 	unique key of the position
+	 * @return 				the score of the position or 0 if the key is not found
 	 */
-	public TranspositionTable(int size) {
-		this.size = size;
-		entries = new Int2ObjectOpenHashMap<>(AppConfig.tpTableSize);
-	}
-	
-	
-	public void clear() {
-		entries.clear();
+	public byte get(long positionKey);
+
+
+	/**
+	 * adds the upper bound of a position to the transposition table
+	 * @param positionKey 		unique key of the position
+	 * @param score 			the upper bound of the position, needs to be larger than 0
+	 * @param work 				measure for the work that was needed to find the bound, larger is more
+	 * @param move 				column of the best move, -1 to keep the saved move
+	 * @return 					true if the entry of another position was overwritten
+	 */
+	public default boolean put(long positionKey, byte score, int work, int move) {
+		return put(positionKey, score);
 	}
 
 
 	/**
-	 * returns the modulo key of the passed position key
-	 * @param positionKey	unique key of the position
-	 * @return				key in the transposition table
+	 * adds the lower bound of a position to the transposition table
+	 * @param positionKey 		unique key of the position
+	 * @param score 			the lower bound of the position, needs to be larger than 0
+	 * @param work 				measure for the work that was needed to find the bound, larger is more
+	 * @param move 				column of the move that reached the bound
+	 * @return 					true if the entry of another position was overwritten
 	 */
-	private int getModuloKey(long positionKey) {
-		return (int) (positionKey % this.size);
+	public default boolean putLower(long positionKey, byte score, int work, int move) {
+		return false;
 	}
 
-	
+
 	/**
-	 * adds a position to the transposition table, in case of a collision the new value is kept
-	 * @param positionKey: 		unique key of the position
-	 * @param score: 			the score of the position
+	 * returns the lower bound of a position for the passed position key
+	 * @param positionKey 	unique key of the position
+	 * @return 				the lower bound of the position or 0 if it is not known
 	 */
-	public void put(long positionKey, byte score) {
-		int i = getModuloKey(positionKey);
-		Entry entry = new Entry(positionKey, score);
-		entries.put(i, entry);                    
+	public default byte getLower(long positionKey) {
+		return 0;
 	}
 
 
-	/** 
-	 * returns the value of a position for the passed position key
-	 * @param positionKey 	unique key of the position		
-	 * @return 				the score of the position or 0 if the key is not found
+	/**
+	 * returns the best move of a position found by an earlier search
+	 * @param positionKey 	unique key of the position
+	 * @return 				column of the move or -1 if it is not known
 	 */
-	public byte get(long positionKey) {
-		int i = getModuloKey(positionKey); 
-		Entry entry = entries.get(i);
-		if (entry != null && entry.key == positionKey) {   // avoid error due to collisions
-			return entry.score;
-		} else { 
-			return 0;            
-		}
+	public default int getMove(long positionKey) {
+		return -1;
 	}
 
 
 	/**
-	 * define one entry in the transposition table, the size is 72 bits
+	 * marks the start of a new search, entries of older searches stay valid but are replaced first
 	 */
-	private class Entry {
-		private Entry(long key, byte score) {
-			this.key = key;
-			this.score = score;
-		}
+	public default void nextGeneration() {
 		
-	    @Override
-	    public int hashCode() {
-	    	return getModuloKey(key);
-	    }
-		
-		long key; 		 // the key of the position 	64 bits
-		byte score;      // the score of the position 	8 bits
 	}
 
-}
\ No newline at end of file
+
+	/**
+	 * removes all entries from the table
+	 */
+	public void clear();
+
+
+	/**
+	 * saves all entries of the table to a snapshot file, the table should not be changed while it is saved
+	 * @param filePath		path of the snapshot file
+	 * @throws IOException
+	 */
+	public void save(String filePath) throws IOException;
+
+
+	/**
+	 * replaces all entries of the table with the entries of a snapshot file
+	 * @param filePath		path of the snapshot file
+	 * @throws IOException	if the file is not a snapshot of a table of the same type and size
+	 */
+	public void load(String filePath) throws IOException;
+}
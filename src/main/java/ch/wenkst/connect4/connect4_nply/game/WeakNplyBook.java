@@ -0,0 +1,184 @@
+package ch.wenkst.connect4.connect4_nply.game;
+
+public class WeakNplyBook implements NplyBook {
+	private static final int blockSize = 64; 										// number of positions in a block of keys
+	private static final int gapBits = 7; 											// bits of a gap in one byte, the highest bit marks that more bytes follow
+	private static final int gapMask = (1 << gapBits) - 1;
+	private static final int resultBits = 2; 										// bits of the result of a position
+	private static final int resultsPerWord = Long.SIZE / resultBits;
+	private static final long resultMask = (1L << resultBits) - 1;
+
+	private int size; 					// number of positions
+	private long[] blockKeys; 			// first canonical key of every block
+	private int[] blockOffsets; 		// index of the first gap of every block, the last entry is the number of gap bytes
+	private byte[] gaps; 				// differences to the previous key of all other keys of the blocks, variable length coded
+	private long[] results; 			// loss (0), draw (1) or win (2) of all positions packed in 2 bits
+	private long lastKey; 				// last key that was set, only used to create the book
+	private int gapCount; 				// number of gap bytes that are set, only used to create the book
+
+
+	/**
+	 * nply book for the weak solver that only saves if a position is won, drawn or lost. the sorted keys are split
+	 * into blocks of 64 positions. a block saves its first key and the differences of the other keys to their
+	 * previous key, the canonical keys of the nply positions are close to each other and most differences only need
+	 * one or two bytes. the results are packed with 2 bits per position. a 12 ply position needs about 1.4 bytes instead of
+	 * the 9 bytes of the binary book with the exact scores, see memory
+	 * @param keys		canonical keys of the positions sorted in ascending order without duplicates
+	 * @param scores	scores of the positions in the same order as the keys
+	 */
+	public WeakNplyBook(long[] keys, byte[] scores) {
+		this(keys.length, gapBytes(keys));
+		for (int i=0; i<keys.length; i++) {
+			set(i, keys[i], scores[i]);
+		}
+		finish();
+	}
+
+
+	/**
+	 * allocates the arrays of a book with the passed number of positions, the positions need to be set
+	 * in the order of their keys and the book needs to be finished afterwards
+	 * @param size			number of positions
+	 * @param gapBytes		number of bytes of the coded key differences, see gapBytes
+	 */
+	WeakNplyBook(int size, long gapBytes) {
+		if (gapBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("the keys of the weak book need " + gapBytes + " bytes, the maximum is " + Integer.MAX_VALUE);
+		}
+
+		this.size = size;
+		int blocks = (size + blockSize - 1) / blockSize;
+		blockKeys = new long[blocks];
+		blockOffsets = new int[blocks + 1];
+		gaps = new byte[(int) gapBytes];
+		results = new long[(size + resultsPerWord - 1) / resultsPerWord];
+	}
+
+
+	/**
+	 * sets the position with the passed index
+	 * @param index		index of the position, the positions are set in ascending order of their keys
+	 * @param key		canonical key of the position
+	 * @param score		score of the position
+	 */
+	void set(int index, long key, byte score) {
+		if (index % blockSize == 0) {
+			blockKeys[index / blockSize] = key;
+			blockOffsets[index / blockSize] = gapCount;
+		} else {
+			long gap = key - lastKey;
+			while (gap > gapMask) {
+				gaps[gapCount++] = (byte) (gap & gapMask | 1 << gapBits);
+				gap >>>= gapBits;
+			}
+			gaps[gapCount++] = (byte) gap;
+		}
+		lastKey = key;
+		results[index / resultsPerWord] |= (long) (Integer.signum(score) + 1) << (index % resultsPerWord * resultBits);
+	}
+
+
+	/**
+	 * sets the end of the gaps of the last block
+	 */
+	void finish() {
+		blockOffsets[blockOffsets.length-1] = gapCount;
+	}
+
+
+	/**
+	 * returns the result of the position with the passed key
+	 * @param positionKey 	unique key of the position
+	 * @return 				1 if the position is won, 0 if it is drawn, -1 if it is lost or notFound if
+	 * 						the position is not part of the book
+	 */
+	@Override
+	public byte get(long positionKey) {
+		// find the last block that starts with a smaller or equal key
+		int low = 0;
+		int high = blockKeys.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (blockKeys[middle] <= positionKey) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		if (high < 0) {
+			return notFound;
+		}
+
+		// add up the gaps of the block until the key is reached
+		int index = high * blockSize;
+		long key = blockKeys[high];
+		int offset = blockOffsets[high];
+		int end = blockOffsets[high+1];
+		while (key < positionKey && offset < end) {
+			long gap = 0;
+			int shift = 0;
+			byte gapByte;
+			do {
+				gapByte = gaps[offset++];
+				gap |= (long) (gapByte & gapMask) << shift;
+				shift += gapBits;
+			} while (gapByte < 0);
+			key += gap;
+			index++;
+		}
+
+		if (key != positionKey) {
+			return notFound;
+		}
+		long result = (results[index / resultsPerWord] >>> (index % resultsPerWord * resultBits)) & resultMask;
+		return (byte) (result - 1);
+	}
+
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+
+	/**
+	 * returns the number of bytes that are needed to save the difference of the key to the previous key
+	 * @param index			index of the position
+	 * @param previousKey	key of the previous position
+	 * @param key			key of the position
+	 * @return				number of bytes, 0 for the first key of a block
+	 */
+	static int gapBytes(int index, long previousKey, long key) {
+		if (index % blockSize == 0) {
+			return 0;
+		}
+		int bits = Long.SIZE - Long.numberOfLeadingZeros(key - previousKey);
+		return Math.max((bits + gapBits - 1) / gapBits, 1);
+	}
+
+
+	/**
+	 * returns the number of bytes that are needed to save the differences of all keys
+	 * @param keys		keys of the positions sorted in ascending order
+	 * @return			number of bytes
+	 */
+	private static long gapBytes(long[] keys) {
+		long bytes = 0;
+		for (int i=1; i<keys.length; i++) {
+			bytes += gapBytes(i, keys[i-1], keys[i]);
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * returns the heap memory used by a book
+	 * @param size			number of positions
+	 * @param gapBytes		number of bytes of the coded key differences, see gapBytes
+	 * @return				memory in bytes
+	 */
+	public static long memory(long size, long gapBytes) {
+		long blocks = (size + blockSize - 1) / blockSize;
+		return blocks * (Long.BYTES + Integer.BYTES) + gapBytes + (size + resultsPerWord - 1) / resultsPerWord * Long.BYTES;
+	}
+}
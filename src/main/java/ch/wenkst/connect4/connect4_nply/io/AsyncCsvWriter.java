@@ -0,0 +1,272 @@
+package ch.wenkst.connect4.connect4_nply.io;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import ch.wenkst.sw_utils.logging.Log;
+
+public class AsyncCsvWriter implements AutoCloseable {
+	private static Log log = Log.getLogger(AsyncCsvWriter.class);
+	private static final int bufferSize = 1 << 20; 		// size of the write buffer in bytes
+	private static final int batchSize = 4096; 			// maximal number of commands that are taken from the queue at once
+	private static final long offerTimeout = 100; 		// time in ms after which a waiting producer checks if the writer thread failed
+
+	private BlockingQueue<Object> queue; 				// records (Object[]) and commands of the producers
+	private Thread writerThread; 						// the thread that writes all files
+	private volatile IOException error; 				// first error of the writer thread, thrown by close
+
+	// state of the writer thread
+	private String filePath; 							// path of the current file, null if no file is open
+	private FileOutputStream outputStream;
+	private CSVPrinter csvPrinter;
+	private boolean failed; 							// true if writing the current file failed, its records are discarded
+
+
+	/**
+	 * writes csv-files in a separate thread. the producers add the records to a bounded queue and only wait if the
+	 * writer thread is too slow. the writer thread takes the records in batches and writes them to a large buffer,
+	 * the data is only forced to the disk when a file is finished. a file is written to a
+	 * temporary file that is renamed after all its records are on the disk, the file therefore either contains
+	 * all records or it does not exist
+	 * @param capacity		maximal number of records and commands in the queue
+	 * @param name			name of the writer thread
+	 */
+	public AsyncCsvWriter(int capacity, String name) {
+		queue = new ArrayBlockingQueue<>(capacity);
+		writerThread = new Thread(this::run, name);
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+
+	/**
+	 * finishes the current file and starts a new file, all following records are written to the new file
+	 * @param filePath		path of the csv-file
+	 * @param header		names of the columns
+	 * @throws IOException	if the writer thread failed before
+	 */
+	public void open(String filePath, String... header) throws IOException {
+		put(new Command(Command.open, filePath, header));
+	}
+
+
+	/**
+	 * adds a record to the current file
+	 * @param values		the values of the columns
+	 * @throws IOException	if the writer thread failed before
+	 */
+	public void printRecord(Object... values) throws IOException {
+		put(values);
+	}
+
+
+	/**
+	 * finishes the current file, the method does not wait until it is written
+	 * @throws IOException	if the writer thread failed before
+	 */
+	public void finish() throws IOException {
+		put(new Command(Command.finish, null, null));
+	}
+
+
+	/**
+	 * finishes the current file and waits until the writer thread wrote all records
+	 * @throws IOException		the first error of the writer thread
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			// the writer thread keeps taking elements after an error, it only stops if it is not alive anymore
+			Command stop = new Command(Command.stop, null, null);
+			while (writerThread.isAlive() && !queue.offer(stop, offerTimeout, TimeUnit.MILLISECONDS)) {
+				// wait until the writer thread has space in the queue
+			}
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for the csv writer", e);
+		}
+
+		if (error != null) {
+			throw error;
+		}
+	}
+
+
+	/**
+	 * adds an element to the queue, waits if the queue is full. the producers fail as soon as the writer thread
+	 * failed, they do not need to wait until the writer is closed to find out that their records are lost
+	 * @param element		a record or a command
+	 * @throws IOException	if the writer thread failed or if it is not running anymore
+	 */
+	private void put(Object element) throws IOException {
+		try {
+			do {
+				if (error != null) {
+					throw new IOException("the csv writer failed: " + error.getMessage(), error);
+				}
+				if (!writerThread.isAlive()) {
+					throw new IOException("the csv writer thread is not running");
+				}
+			} while (!queue.offer(element, offerTimeout, TimeUnit.MILLISECONDS));
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for the csv writer", e);
+		}
+	}
+
+
+	/**
+	 * the loop of the writer thread, processes the elements of the queue in batches until it is stopped. an
+	 * unexpected exception only fails the current file, the thread keeps taking the elements from the queue
+	 * in order not to block the producers
+	 */
+	private void run() {
+		List<Object> batch = new ArrayList<>(batchSize);
+		while (true) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				finishFile();
+				return;
+			}
+			queue.drainTo(batch, batchSize - 1);
+
+			for (Object element : batch) {
+				boolean stop = element instanceof Command && ((Command) element).type == Command.stop;
+				try {
+					if (stop) {
+						finishFile();
+					} else if (element instanceof Command) {
+						execute((Command) element);
+					} else if (csvPrinter != null && !failed) {
+						csvPrinter.printRecord((Object[]) element);
+					}
+
+				} catch (IOException e) {
+					fail(e);
+				} catch (RuntimeException | Error e) {
+					fail(new IOException("unexpected error of the csv writer", e));
+				}
+
+				if (stop) {
+					return;
+				}
+			}
+			batch.clear();
+		}
+	}
+
+
+	/**
+	 * executes a command of a producer
+	 * @param command		the command
+	 */
+	private void execute(Command command) {
+		switch (command.type) {
+		case Command.open:
+			finishFile();
+			filePath = command.filePath;
+			try {
+				outputStream = new FileOutputStream(filePath + ".tmp");
+				BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream), bufferSize);
+				csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(command.header));
+			} catch (IOException e) {
+				fail(e);
+			}
+			break;
+
+		case Command.finish:
+			finishFile();
+			break;
+		}
+	}
+
+
+	/**
+	 * forces the current file to the disk and renames the temporary file, the temporary file of a failed
+	 * file is deleted
+	 */
+	private void finishFile() {
+		if (filePath == null) {
+			return;
+		}
+
+		Path tempPath = Paths.get(filePath + ".tmp");
+		try {
+			if (!failed) {
+				csvPrinter.flush();
+				outputStream.getFD().sync();
+				csvPrinter.close();
+				csvPrinter = null;
+				Files.move(tempPath, Paths.get(filePath), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				log.fine("csv-file successfully written: " + filePath);
+			}
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		if (failed) {
+			try {
+				if (csvPrinter != null) {
+					csvPrinter.close();
+				} else if (outputStream != null) {
+					outputStream.close();
+				}
+				Files.deleteIfExists(tempPath);
+			} catch (IOException e) {
+				log.warning("error closing the failed csv-file: " + e.getMessage());
+			}
+		}
+
+		filePath = null;
+		outputStream = null;
+		csvPrinter = null;
+		failed = false;
+	}
+
+
+	/**
+	 * marks the current file as failed, its remaining records are discarded
+	 * @param e		the error
+	 */
+	private void fail(IOException e) {
+		log.severe("error writing the csv-file: " + filePath, e);
+		failed = true;
+		if (error == null) {
+			error = e;
+		}
+	}
+
+
+	private static class Command {
+		private static final int open = 0;
+		private static final int finish = 1;
+		private static final int stop = 2;
+
+		private int type;
+		private String filePath; 		// path of the file to open
+		private String[] header; 		// header of the file to open
+
+		private Command(int type, String filePath, String[] header) {
+			this.type = type;
+			this.filePath = filePath;
+			this.header = header;
+		}
+	}
+}
@@ -0,0 +1,386 @@
+package ch.wenkst.connect4.connect4_nply.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class NumericCsvReader implements AutoCloseable {
+	private static final long defaultSegmentSize = 1L << 30; 	// maximal size of a mapped segment, a segment ends after a line
+	private static final int minChunkSize = 1 << 20; 			// minimal number of bytes that are parsed by one task
+
+	private String filePath;
+	private long maxSegmentSize; 					// maximal size of a mapped segment
+	private FileChannel channel;
+	private List<MappedByteBuffer> segments; 		// the mapped file without the header line
+	private int[] slots; 							// slot of every column of the file in the values, -1 if the column is not read
+	private int columnCount; 						// number of read columns
+
+	// state of the sequential reading
+	private int segmentIndex; 						// the segment that is read
+	private int offset; 							// offset of the next line in the segment
+	private long[] values; 							// values of the current line
+
+
+	/**
+	 * reads the numeric columns of a csv-file with a header line, as it is written by the csv-printers of this
+	 * project. the file is memory mapped and the numbers are parsed directly from the bytes without creating
+	 * a string or an object for a line. the other columns are skipped, they must not contain quoted commas or
+	 * line breaks. files that are larger than 1Gb are mapped in several segments
+	 * @param filePath		path of the csv-file
+	 * @param columns		names of the numeric columns to read, the values of a line have the same order
+	 * @throws IOException	if the file cannot be read or if a column does not exist
+	 */
+	public NumericCsvReader(String filePath, String... columns) throws IOException {
+		this(filePath, defaultSegmentSize, columns);
+	}
+
+
+	/**
+	 * reads the numeric columns of a csv-file, the file is mapped in segments of the passed size
+	 * @param filePath		path of the csv-file
+	 * @param segmentSize	maximal size of a mapped segment in bytes, needs to be larger than the longest line
+	 * @param columns		names of the numeric columns to read, the values of a line have the same order
+	 * @throws IOException	if the file cannot be read or if a column does not exist
+	 */
+	public NumericCsvReader(String filePath, long segmentSize, String... columns) throws IOException {
+		this.filePath = filePath;
+		maxSegmentSize = Math.min(segmentSize, defaultSegmentSize);
+		columnCount = columns.length;
+		values = new long[columnCount];
+		channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+		try {
+			long dataStart = readHeader(columns);
+			mapSegments(dataStart);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * reads the header line and defines which columns are read, the names of the columns can be quoted
+	 * @param columns		names of the columns to read
+	 * @return				offset of the first line after the header
+	 * @throws IOException
+	 */
+	private long readHeader(String[] columns) throws IOException {
+		MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, Math.min(channel.size(), 1 << 16));
+		StringBuilder header = new StringBuilder();
+		int i = 0;
+		while (i < buffer.limit() && buffer.get(i) != '\n') {
+			header.append((char) buffer.get(i++));
+		}
+		if (i == buffer.limit() && i < channel.size()) {
+			throw new IOException("the header line of " + filePath + " is too long");
+		}
+
+		String[] names = header.toString().trim().split(",");
+		slots = new int[names.length];
+		for (int col=0; col<names.length; col++) {
+			String name = names[col].trim();
+			if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+				name = name.substring(1, name.length() - 1);
+			}
+			
+			slots[col] = -1;
+			for (int slot=0; slot<columns.length; slot++) {
+				if (name.equals(columns[slot])) {
+					slots[col] = slot;
+				}
+			}
+		}
+
+		for (int slot=0; slot<columns.length; slot++) {
+			boolean found = false;
+			for (int col=0; col<slots.length; col++) {
+				found |= slots[col] == slot;
+			}
+			if (!found) {
+				throw new IOException("the file " + filePath + " does not have the column " + columns[slot]);
+			}
+		}
+
+		return Math.min(i + 1, channel.size());
+	}
+
+
+	/**
+	 * maps the lines of the file in segments of at most 1Gb, every segment ends after a line break or at the
+	 * end of the file
+	 * @param start		offset of the first line
+	 * @throws IOException
+	 */
+	private void mapSegments(long start) throws IOException {
+		segments = new ArrayList<>();
+		long size = channel.size();
+		while (start < size) {
+			long length = Math.min(maxSegmentSize, size - start);
+			MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, start, length);
+			if (start + length < size) {
+				int end = (int) length;
+				while (end > 0 && segment.get(end - 1) != '\n') {
+					end--;
+				}
+				if (end == 0) {
+					throw new IOException("the file " + filePath + " has a line that is longer than " + maxSegmentSize + " bytes");
+				}
+				length = end;
+				segment = channel.map(MapMode.READ_ONLY, start, length);
+			}
+
+			segments.add(segment);
+			start += length;
+		}
+	}
+
+
+	/**
+	 * reads the next line
+	 * @return				true if a line was read, false if the end of the file is reached
+	 * @throws IOException	if a number cannot be parsed
+	 */
+	public boolean next() throws IOException {
+		while (segmentIndex < segments.size()) {
+			MappedByteBuffer segment = segments.get(segmentIndex);
+			offset = skipEmptyLines(segment, offset, segment.limit());
+			if (offset < segment.limit()) {
+				try {
+					offset = parseLine(segment, offset, segment.limit(), values);
+				} catch (NumberFormatException e) {
+					throw new IOException(e.getMessage(), e);
+				}
+				return true;
+			}
+
+			segmentIndex++;
+			offset = 0;
+		}
+
+		return false;
+	}
+
+
+	/**
+	 * returns a value of the last read line
+	 * @param slot		index of the column in the names that were passed to the constructor
+	 * @return
+	 */
+	public long get(int slot) {
+		return values[slot];
+	}
+
+
+	/**
+	 * reads all remaining lines in parallel, the segments are split into chunks that end after a line break.
+	 * the lines of every chunk are counted first, then every chunk parses its numbers directly to its place
+	 * in the arrays
+	 * @param threads		number of threads that parse the file
+	 * @return				an array with the values of all lines for every column in the order of the names that
+	 * 						were passed to the constructor, the lines keep the order of the file
+	 * @throws IOException	if a number cannot be parsed
+	 */
+	public long[][] readAll(int threads) throws IOException {
+		// split the unread part of the file into chunks
+		List<Chunk> chunks = new ArrayList<>();
+		for (int i=segmentIndex; i<segments.size(); i++) {
+			MappedByteBuffer segment = segments.get(i);
+			int start = i == segmentIndex ? offset : 0;
+			int chunkSize = Math.max(minChunkSize, (segment.limit() - start) / (4 * threads) + 1);
+			while (start < segment.limit()) {
+				int end = Math.min(segment.limit(), start + chunkSize);
+				while (end < segment.limit() && segment.get(end - 1) != '\n') {
+					end++;
+				}
+				chunks.add(new Chunk(segment, start, end));
+				start = end;
+			}
+		}
+		segmentIndex = segments.size();
+		offset = 0;
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// count the lines to know where the values of the chunks start
+			pool.invoke(new ChunkTask(chunks, 0, chunks.size(), null));
+			int lineCount = 0;
+			for (Chunk chunk : chunks) {
+				chunk.firstLine = lineCount;
+				lineCount += chunk.lineCount;
+			}
+
+			long[][] columns = new long[columnCount][lineCount];
+			pool.invoke(new ChunkTask(chunks, 0, chunks.size(), columns));
+			return columns;
+
+		} catch (NumberFormatException e) {
+			throw new IOException(e.getMessage(), e);
+
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+
+	/**
+	 * skips the empty lines and the carriage returns
+	 * @param buffer	buffer with the lines
+	 * @param pos		position in the buffer
+	 * @param end		end of the lines in the buffer
+	 * @return			position of the first character of the next non-empty line or the end
+	 */
+	private static int skipEmptyLines(MappedByteBuffer buffer, int pos, int end) {
+		while (pos < end) {
+			byte b = buffer.get(pos);
+			if (b != '\n' && b != '\r') {
+				break;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+
+	/**
+	 * parses the numbers of the read columns of one line
+	 * @param buffer	buffer with the lines
+	 * @param pos		position of the first character of the line
+	 * @param end		end of the lines in the buffer
+	 * @param values	array to which the values are written
+	 * @return			position after the line break of the line
+	 * @throws NumberFormatException	if a read column does not contain a number
+	 */
+	private int parseLine(MappedByteBuffer buffer, int pos, int end, long[] values) {
+		for (int col=0; col<slots.length; col++) {
+			int slot = slots[col];
+			if (slot < 0) {
+				// skip the column
+				while (pos < end) {
+					byte b = buffer.get(pos);
+					if (b == ',' || b == '\n' || b == '\r') {
+						break;
+					}
+					pos++;
+				}
+
+			} else {
+				boolean negative = pos < end && buffer.get(pos) == '-';
+				if (negative) {
+					pos++;
+				}
+				long value = 0;
+				int digits = 0;
+				while (pos < end) {
+					int digit = buffer.get(pos) - '0';
+					if (digit < 0 || digit > 9) {
+						break;
+					}
+					value = value * 10 + digit;
+					digits++;
+					pos++;
+				}
+				if (digits == 0 || (pos < end && buffer.get(pos) != ',' && buffer.get(pos) != '\n' && buffer.get(pos) != '\r')) {
+					throw new NumberFormatException("the column " + col + " of " + filePath + " does not contain a number");
+				}
+				values[slot] = negative ? -value : value;
+			}
+
+			// skip the separator
+			if (pos < end && buffer.get(pos) == ',') {
+				pos++;
+			}
+		}
+
+		// skip the rest of the line
+		while (pos < end && buffer.get(pos) != '\n') {
+			pos++;
+		}
+		return pos < end ? pos + 1 : pos;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		segments = null;
+		channel.close();
+	}
+
+
+	private static class Chunk {
+		private MappedByteBuffer segment; 		// the segment that contains the chunk
+		private int start; 						// position of the first line in the segment
+		private int end; 						// position after the last line in the segment
+		private int lineCount; 					// number of non-empty lines of the chunk
+		private int firstLine; 					// index of the first line of the chunk in the file
+
+		private Chunk(MappedByteBuffer segment, int start, int end) {
+			this.segment = segment;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private List<Chunk> chunks;
+		private int start;
+		private int end;
+		private long[][] columns;
+
+		/**
+		 * counts or parses the lines of the chunks between the start (included) and the end index (not included)
+		 * @param chunks		all chunks of the file
+		 * @param start			start index of the chunks
+		 * @param end			end index (not included) of the chunks
+		 * @param columns		arrays to which the values are written, null to only count the lines
+		 */
+		private ChunkTask(List<Chunk> chunks, int start, int end, long[][] columns) {
+			this.chunks = chunks;
+			this.start = start;
+			this.end = end;
+			this.columns = columns;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new ChunkTask(chunks, start, middle, columns), new ChunkTask(chunks, middle, end, columns));
+				return;
+			}
+
+			// the file has no unread lines
+			if (start >= end) {
+				return;
+			}
+
+			Chunk chunk = chunks.get(start);
+			long[] lineValues = new long[columnCount];
+			int line = chunk.firstLine;
+			int pos = skipEmptyLines(chunk.segment, chunk.start, chunk.end);
+			while (pos < chunk.end) {
+				if (columns == null) {
+					while (pos < chunk.end && chunk.segment.get(pos) != '\n') {
+						pos++;
+					}
+					chunk.lineCount++;
+				} else {
+					pos = parseLine(chunk.segment, pos, chunk.end, lineValues);
+					for (int slot=0; slot<columnCount; slot++) {
+						columns[slot][line] = lineValues[slot];
+					}
+					line++;
+				}
+				pos = skipEmptyLines(chunk.segment, pos, chunk.end);
+			}
+		}
+	}
+}
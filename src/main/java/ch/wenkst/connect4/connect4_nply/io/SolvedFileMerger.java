@@ -0,0 +1,243 @@
+package ch.wenkst.connect4.connect4_nply.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ch.wenkst.connect4.connect4_nply.game.Position;
+
+public class SolvedFileMerger {
+	private static final Pattern fileNamePattern = Pattern.compile("(\\d+)_(\\d+)\\.csv"); 	// start and end index of the solved positions
+
+	private List<SolvedFile> files; 		// the solved files sorted by their start index
+	private long duplicates; 				// number of positions that were contained more than once
+	private long conflicts; 				// number of duplicate positions with different scores
+	private long firstConflictKey = -1; 	// canonical key of the first conflicting position
+
+
+	/**
+	 * merges the csv-files with the solved positions that are written by the solve manager. every file contains
+	 * the positions of an index range of the position file, the range is defined by the file name
+	 * (<start>_<end>.csv). the files are read and sorted in parallel and then merged with a k-way merge to one
+	 * sorted list of positions in which every canonical key appears only once
+	 * @param filePaths		paths of the solved csv-files
+	 * @throws IOException	if the name of a file does not define its index range
+	 */
+	public SolvedFileMerger(List<String> filePaths) throws IOException {
+		files = new ArrayList<>();
+		for (String filePath : filePaths) {
+			Matcher matcher = fileNamePattern.matcher(new File(filePath).getName());
+			if (!matcher.matches()) {
+				throw new IOException("the name of the solved file " + filePath + " does not define the index range <start>_<end>.csv");
+			}
+			files.add(new SolvedFile(filePath, Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))));
+		}
+		files.sort(Comparator.comparingLong(file -> file.start));
+	}
+
+
+	/**
+	 * reads all files in parallel and merges their positions
+	 * @param threads		number of threads that read and sort the files
+	 * @return				the merged positions as canonical key << 8 | score sorted in ascending order without
+	 * 						duplicate keys
+	 * @throws IOException
+	 */
+	public long[] merge(int threads) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new ReadTask(0, files.size()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+
+		return mergeRuns();
+	}
+
+
+	/**
+	 * merges the sorted runs of all files, the run with the smallest next entry is taken from a priority queue.
+	 * of duplicate keys only the first entry is kept, a key with different scores is counted as a conflict
+	 * @return				the merged entries
+	 */
+	private long[] mergeRuns() {
+		long totalSize = 0;
+		PriorityQueue<SolvedFile> queue = new PriorityQueue<>(Math.max(1, files.size()), Comparator.comparingLong(SolvedFile::head));
+		for (SolvedFile file : files) {
+			totalSize += file.entries.length;
+			if (file.entries.length > 0) {
+				queue.add(file);
+			}
+		}
+
+		long[] merged = new long[(int) totalSize];
+		int size = 0;
+		while (!queue.isEmpty()) {
+			SolvedFile file = queue.poll();
+			long entry = file.head();
+
+			if (size > 0 && merged[size-1] >>> Byte.SIZE == entry >>> Byte.SIZE) {
+				duplicates++;
+				if (merged[size-1] != entry) {
+					if (conflicts++ == 0) {
+						firstConflictKey = entry >>> Byte.SIZE;
+					}
+				}
+			} else {
+				merged[size++] = entry;
+			}
+
+			file.index++;
+			if (file.index < file.entries.length) {
+				queue.add(file);
+			}
+		}
+
+		return Arrays.copyOf(merged, size);
+	}
+
+
+	/**
+	 * checks that the index ranges of the files cover the positions without gaps and overlaps and that every file
+	 * contains as many positions as its range defines. the files need to be merged before
+	 * @return				a description of all problems that were found, empty if there are none
+	 */
+	public List<String> coverageProblems() {
+		List<String> problems = new ArrayList<>();
+		long end = 0;
+		for (SolvedFile file : files) {
+			if (file.start > end) {
+				problems.add("gap: the positions " + end + " to " + file.start + " are not solved");
+			} else if (file.start < end) {
+				problems.add("overlap: the positions " + file.start + " to " + Math.min(end, file.end) + " are solved more than once, " + file.filePath);
+			}
+			if (file.lineCount != file.end - file.start) {
+				problems.add("incomplete: " + file.filePath + " contains " + file.lineCount + " positions instead of " + (file.end - file.start));
+			}
+			end = Math.max(end, file.end);
+		}
+
+		return problems;
+	}
+
+
+	/**
+	 * @return	the index after the last solved position
+	 */
+	public long coveredEnd() {
+		return files.isEmpty() ? 0 : files.stream().mapToLong(file -> file.end).max().getAsLong();
+	}
+
+
+	/**
+	 * @return	number of positions that were contained more than once in the files, a position and its mirrored
+	 * 			position count as the same position
+	 */
+	public long duplicates() {
+		return duplicates;
+	}
+
+
+	/**
+	 * @return	number of duplicate positions that had a different score than the first occurrence
+	 */
+	public long conflicts() {
+		return conflicts;
+	}
+
+
+	/**
+	 * @return	canonical key of the first position with conflicting scores, -1 if there are no conflicts
+	 */
+	public long firstConflictKey() {
+		return firstConflictKey;
+	}
+
+
+	private static class SolvedFile {
+		private String filePath;
+		private long start; 			// index of the first position in the position file
+		private long end; 				// index after the last position in the position file
+		private long lineCount; 		// number of positions in the file
+		private long[] entries; 		// canonical key << 8 | score of all positions sorted in ascending order
+		private int index; 				// index of the next entry that is merged
+
+		private SolvedFile(String filePath, long start, long end) {
+			this.filePath = filePath;
+			this.start = start;
+			this.end = end;
+		}
+
+		private long head() {
+			return entries[index];
+		}
+
+
+		/**
+		 * reads the positions of the file and sorts them by their canonical key
+		 * @throws IOException
+		 */
+		private void read() throws IOException {
+			long[] buffer = new long[(int) Math.max(16, end - start)];
+			int size = 0;
+			try (NumericCsvReader reader = new NumericCsvReader(filePath, "position", "disk_mask", "score")) {
+				while (reader.next()) {
+					if (size == buffer.length) {
+						buffer = Arrays.copyOf(buffer, 2 * size);
+					}
+					long key = Position.canonicalKey(reader.get(0) + reader.get(1));
+					buffer[size++] = key << Byte.SIZE | (reader.get(2) & 0xFF);
+				}
+			}
+
+			lineCount = size;
+			entries = Arrays.copyOf(buffer, size);
+			Arrays.sort(entries);
+		}
+	}
+
+
+	private class ReadTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private int start;
+		private int end;
+
+		/**
+		 * reads and sorts the files between the start (included) and the end index (not included)
+		 * @param start		start index of the files
+		 * @param end		end index (not included) of the files
+		 */
+		private ReadTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new ReadTask(start, middle), new ReadTask(middle, end));
+				return;
+			}
+
+			if (start < end) {
+				try {
+					files.get(start).read();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+	}
+}
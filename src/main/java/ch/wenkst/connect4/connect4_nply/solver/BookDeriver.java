@@ -0,0 +1,145 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+
+public class BookDeriver {
+	private static final int taskSize = 4096; 		// number of positions that are scored by one task without splitting it
+
+	private int nply; 								// number of moves played in the positions of the derived book
+	private NplyBook childBook; 					// book with the scores of all nply+1 positions
+
+
+	/**
+	 * derives the exact scores of the nply positions from the book of the nply+1 positions without searching.
+	 * the score of a position is the best score of its children (negamax over one move), the children that are
+	 * not part of the book are scored with the same rules as the solver uses: a player that can win with the next
+	 * move wins and a player without a non losing move loses. the book of the nply+1 positions needs to contain
+	 * all positions that are not won within the next 2 moves, as created by the solve manager or this class
+	 * @param nply			number of moves played in the positions of the derived book
+	 * @param childBook		book with the scores of all nply+1 positions
+	 */
+	public BookDeriver(int nply, NplyBook childBook) {
+		this.nply = nply;
+		this.childBook = childBook;
+	}
+
+
+	/**
+	 * derives the scores of the passed positions in parallel, every task scores a range of positions
+	 * @param keys		keys of the nply positions
+	 * @param threads	number of threads that score the positions
+	 * @return			the scores of the positions in the same order as the keys
+	 */
+	public byte[] deriveScores(long[] keys, int threads) {
+		byte[] scores = new byte[keys.length];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new DeriveTask(keys, scores, 0, keys.length));
+		} finally {
+			pool.shutdown();
+		}
+
+		return scores;
+	}
+
+
+	/**
+	 * returns the exact score of the passed nply position
+	 * @param position		position with nply moves played, it is the same after the method returns
+	 * @return				the score of the position
+	 */
+	public byte score(Position position) {
+		byte score = ruleScore(position, nply);
+		if (score != NplyBook.notFound) {
+			return score;
+		}
+
+		// the best move is one of the non losing moves, all other moves let the opponent win immediately
+		long nonLosingMoves = position.nonLosingMoves();
+		byte best = Byte.MIN_VALUE;
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			long move = nonLosingMoves & Position.columnMask(col);
+			if (move == 0) {
+				continue;
+			}
+
+			position.play(move);
+			byte childScore = childBook.get(position.toCanonicalKey());
+			if (childScore == NplyBook.notFound) {
+				childScore = ruleScore(position, nply + 1);
+			}
+			if (childScore == NplyBook.notFound) {
+				long childKey = position.toCanonicalKey();
+				position.undo(move);
+				throw new IllegalStateException("the " + (nply + 1) + "ply book does not contain the position with the key " + childKey);
+			}
+			position.undo(move);
+
+			if (-childScore > best) {
+				best = (byte) -childScore;
+			}
+		}
+
+		return best;
+	}
+
+
+	/**
+	 * returns the score of the positions that the solver does not search
+	 * @param position		the position
+	 * @param moveCount		number of moves played in the position
+	 * @return				the score if the player to move can win with the next move or if he has no non losing
+	 * 						move, NplyBook.notFound otherwise
+	 */
+	private static byte ruleScore(Position position, int moveCount) {
+		if (position.canWinNext()) {
+			return (byte) ((AppConfig.boardSize+1 - moveCount) / 2);
+		}
+		if (position.nonLosingMoves() == 0) {
+			return (byte) -((AppConfig.boardSize - moveCount) / 2);
+		}
+		return NplyBook.notFound;
+	}
+
+
+	private class DeriveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private long[] keys;
+		private byte[] scores;
+		private int start;
+		private int end;
+
+		/**
+		 * scores the positions between the start (included) and the end index (not included), the task is
+		 * split until it has at most taskSize positions
+		 * @param keys		keys of the nply positions
+		 * @param scores	array to which the scores are written
+		 * @param start		start index of the positions to score
+		 * @param end		end index (not included) of the positions to score
+		 */
+		private DeriveTask(long[] keys, byte[] scores, int start, int end) {
+			this.keys = keys;
+			this.scores = scores;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > taskSize) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new DeriveTask(keys, scores, start, middle), new DeriveTask(keys, scores, middle, end));
+				return;
+			}
+
+			for (int i=start; i<end; i++) {
+				scores[i] = score(Position.fromKey(keys[i]));
+			}
+		}
+	}
+}
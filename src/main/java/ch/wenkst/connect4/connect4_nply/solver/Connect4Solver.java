@@ -1,33 +1,71 @@
 package ch.wenkst.connect4.connect4_nply.solver;
 
-import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-
 import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.BucketTranspositionTable;
 import ch.wenkst.connect4.connect4_nply.game.MoveSorter;
+import ch.wenkst.connect4.connect4_nply.game.MultiDepthBook;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.connect4.connect4_nply.game.OffHeapTranspositionTable;
 import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.game.SharedTranspositionTable;
 import ch.wenkst.connect4.connect4_nply.game.SolvedPosition;
+import ch.wenkst.connect4.connect4_nply.game.SolvedPositionStore;
 import ch.wenkst.connect4.connect4_nply.game.TranspositionTable;
 import ch.wenkst.sw_utils.logging.Log;
-import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
 
 public class Connect4Solver {	
 	private static Log log = Log.getLogger(Connect4Solver.class);
+	private static SolvedPositionStore sharedStore; 						// solved position store shared by all solvers
+	private static final boolean useSolvedStore = AppConfig.getInstance().getConfigValue("solvedStore", false);
+	
+	// memory of the transposition table in bytes and true if it is saved outside of the heap
+	private static final long tpTableMemory = (long) AppConfig.getInstance().getConfigValue("tpTableMemoryMb", 32) << 20;
+	private static final boolean tpTableOffHeap = AppConfig.getInstance().getConfigValue("tpTableOffHeap", false);
+	
+	// deepest nply book that is used and the memory budgets of the books that are copied to the heap or memory mapped
+	private static final int bookMaxPly = AppConfig.getInstance().getConfigValue("bookMaxPly", 12);
+	private static final long bookHeapMemory = (long) AppConfig.getInstance().getConfigValue("bookHeapMb", 64) << 20;
+	private static final long bookMappedMemory = (long) AppConfig.getInstance().getConfigValue("bookMappedMb", 4096) << 20;
+	private static final NplyBookLoader bookLoader = new NplyBookLoader(AppConfig.dirTranspositionTable, bookHeapMemory, bookMappedMemory); 	// books shared by all solvers
+	
+	// the move score is the number of winning chances, the bits below are used by the move ordering heuristics
+	private static final int threatShift = 24;
+	private static final int killerBonus = 1 << 23; 	// the history needs to stay below the killer bonus
+	private static final int maxHistory = killerBonus - 1;
+	private static final MoveOrdering defaultMoveOrdering = MoveOrdering.valueOf(AppConfig.getInstance().getConfigValue("moveOrdering", MoveOrdering.THREATS.name()));
+	
 	private boolean isStrongSolver; 				// true if the exact score of the position should be found
-	private int nplyTranspositions = -1; 			// the nply to use for the transposition table, e.g. 8ply will use all 8ply positions
+	private int nplyTranspositions = -1; 			// the smallest nply book to use, e.g. 8ply will use the 8ply positions and all deeper books up to bookMaxPly
 	
-	private Long2ByteOpenHashMap nplyPositionMap;	// the nply transposition table with the solved positions
+	private MultiDepthBook nplyBook = new MultiDepthBook(); 		// the nply books of all depths with the solved positions
+	private SolvedPositionStore solvedStore; 		// exactly solved positions of earlier searches, null if not used
 	private TranspositionTable tpTable; 			// transposition table to save the upper bound of the position
+	private boolean agesTable = true; 				// true if every search starts a new generation of the table, false if the owner of a shared table does it
 	
 	
 	// defines in which columns the moves are explored
 	private int[] columnOrder = new int[AppConfig.boardWidth];	
 	
+	// move sorters for each number of played moves, they are reused to avoid creating objects during the search
+	private MoveSorter[] moveSorters = new MoveSorter[AppConfig.boardSize + 1];
+	
+	// move ordering heuristics, the tables are kept for all solved positions
+	private MoveOrdering moveOrdering = defaultMoveOrdering;
+	private long[][] killerMoves = new long[AppConfig.boardSize + 1][2]; 		// last two moves that caused a cutoff for every number of played moves
+	private int[][] history = new int[2][Long.SIZE]; 						// cutoffs weighted by the remaining moves for both players and every cell
+	
+	private volatile boolean stopped = false; 		// true if the running search should be aborted
+	private long nodeCount; 						// number of explored nodes, used to measure the size of a subtree
+	
+	// counters of the search, only updated if the metrics are enabled
+	private SolverMetrics metrics = new SolverMetrics(); 			// counters of the last solved position
+	private SolverMetrics totalMetrics = new SolverMetrics(); 		// counters of all solved positions
+	private long metricsStartTime; 									// start time of the last solve
+	
 	
 	public Connect4Solver() {
 		this(true, -1);
@@ -47,14 +85,75 @@ public class Connect4Solver {
 	 * - ordering of the move exploration order based on a score function. the score is equal to the number of created
 	 *   winning chances as they are most likely moves that lead to a winning path more quickly. if the score is equal
 	 *   central columns are explored first because they are often good moves.
-	 * - transposition table to save the upper bound (saving lower bound seems to slow the search)
+	 * - transposition table to save the upper and the lower bound, the entries that needed the most work are kept
 	 * - iterative deepening
 	 * - avoid exploring losing moves to prune the tree faster	
 	 */
 	public Connect4Solver(boolean isStrongSolver, int nplyTranspositions) {
+		this(isStrongSolver, nplyTranspositions, tpTableMemory);
+	}
+
+
+	/**
+	 * solver for connect4 with a transposition table of the passed memory
+	 * @param isStrongSolver		true if the exact score of the position should be found
+	 * @param nplyTranspositions	smallest nply book that should be used by the solver
+	 * @param tpTableMemory			memory of the transposition table in bytes
+	 */
+	public Connect4Solver(boolean isStrongSolver, int nplyTranspositions, long tpTableMemory) {
+		this(isStrongSolver, nplyTranspositions, createTpTable(tpTableMemory));
+	}
+	
+	
+	/**
+	 * creates a bucket transposition table with the passed memory. the table is saved outside of the heap if this
+	 * is configured or if it has more entries than an array
+	 * @param memory		memory of the table in bytes, the number of entries is rounded down to a power of 2
+	 * @return
+	 */
+	public static TranspositionTable createTpTable(long memory) {
+		long size = memory / Long.BYTES;
+		if (tpTableOffHeap || size > Integer.MAX_VALUE) {
+			return new OffHeapTranspositionTable(memory);
+		}
+		return new BucketTranspositionTable((int) size);
+	}
+
+
+	/**
+	 * creates a transposition table with the configured memory that can be shared by many solvers, see createSharedTpTable(long)
+	 * @return
+	 */
+	public static TranspositionTable createSharedTpTable() {
+		return createSharedTpTable(tpTableMemory);
+	}
+
+
+	/**
+	 * creates a bucket transposition table with the passed memory that can be used by many solvers at the same time.
+	 * it has the same layout as the table of a single solver and is saved outside of the heap under the same conditions
+	 * @param memory		memory of the table in bytes, the number of entries is rounded down to a power of 2
+	 * @return
+	 */
+	public static TranspositionTable createSharedTpTable(long memory) {
+		long size = memory / Long.BYTES;
+		if (tpTableOffHeap || size > Integer.MAX_VALUE) {
+			return new OffHeapTranspositionTable(memory, OffHeapTranspositionTable.defaultPageBits, true);
+		}
+		return new SharedTranspositionTable((int) size);
+	}
+
+
+	/**
+	 * solver for connect4 that uses the passed transposition table to cache the bounds of the positions
+	 * @param isStrongSolver		true if the exact score of the position should be found
+	 * @param nplyTranspositions	smallest nply book that should be used by the solver
+	 * @param tpTable				transposition table to save the bounds of the positions
+	 */
+	public Connect4Solver(boolean isStrongSolver, int nplyTranspositions, TranspositionTable tpTable) {
 		this.isStrongSolver = isStrongSolver;
 		this.nplyTranspositions = nplyTranspositions;
-		tpTable = new TranspositionTable(AppConfig.tpTableSize);
+		this.tpTable = tpTable;
 		
 		init();
 	}
@@ -65,47 +164,109 @@ public class Connect4Solver {
 	 * all 12ply positions
 	 */
 	private void init() {
+		for (int i=0; i<moveSorters.length; i++) {
+			moveSorters[i] = new MoveSorter();
+		}
+		
 		// define the column exploration order, central columns are explored first
 		for (int col = 0; col < AppConfig.boardWidth; col++) {
 			int sign = (col%2 == 0) ? 1 : -1; 			
 			columnOrder[col] = AppConfig.boardWidth/2 + (int) Math.ceil((double) col/2) * sign;
 		}
 
-		// initialize the nply table map where either side cannot win with their next move
+		// initialize the nply books with the positions where either side cannot win with their next move
 		if (nplyTranspositions > 0) {
-			log.fine("start to read in the " + nplyTranspositions + "ply position table");
-			try {
-				nplyPositionMap = new Long2ByteOpenHashMap();
-				CSVFormat csvFileFormat = CSVFormat.DEFAULT.withHeader();
-				FileReader fileReader = new FileReader(AppConfig.dirTranspositionTable + "connect4_" + nplyTranspositions + "ply.csv");
-				CSVParser csvFileParser = new CSVParser(fileReader, csvFileFormat);
-
-
-				// add all positions to the position map
-				for (CSVRecord csvRecord : csvFileParser) {	
-					long position = Long.parseLong(csvRecord.get("position"));
-					long diskMask = Long.parseLong(csvRecord.get("disk_mask"));
-					byte score = Byte.parseByte(csvRecord.get("score"));
-
-					Position p = new Position(position, diskMask);
-					nplyPositionMap.put(p.toKey(), score);
+			for (int nply=nplyTranspositions; nply<=Math.max(nplyTranspositions, bookMaxPly); nply++) {
+				try {
+					NplyBook book = bookLoader.load(nply, !isStrongSolver);
+					if (book != null) {
+						nplyBook.add(nply, book);
+					}
+					
+				} catch (Exception e) {
+					log.severe("error creating the " + nply + "ply position table: ", e);
 				}
-
-				// close the reader resources
-				if (csvFileParser != null) csvFileParser.close();
-				if (fileReader != null) fileReader.close();
-				log.fine("finsihed creating the " + nplyTranspositions + "ply position table, size: " + nplyPositionMap.size());
-
-			} catch (Exception e) {
-				log.severe("error creating the " + nplyTranspositions + "ply position table: ", e);
-				log.info("the solver will not use any nply transposition table");
-				nplyPositionMap = null;
-				nplyTranspositions = -1;
 			}
+		}
 		
-		} else {
+		if (nplyBook.isEmpty()) {
 			log.info("solver will not use any nply transposition table");
+			nplyTranspositions = -1;
+		}
+		
+		if (useSolvedStore) {
+			solvedStore = openSolvedStore();
+		}
+	}
+	
+	
+	/**
+	 * returns the solved position store, the store is only opened once and then shared between all solvers
+	 * @return				the store or null if it cannot be opened
+	 */
+	private static synchronized SolvedPositionStore openSolvedStore() {
+		if (sharedStore == null) {
+			try {
+				sharedStore = SolvedPositionStore.open(AppConfig.dirSolvedStore);
+				log.fine("opened the solved position store, size: " + sharedStore.size());
+			} catch (IOException e) {
+				log.severe("error opening the solved position store, the solver will not use it: ", e);
+			}
+		}
+		return sharedStore;
+	}
+	
+	
+	/**
+	 * changes the exploration order of the columns with the same move score. this way the helper threads of
+	 * the parallel solver explore the tree in a slightly different order than the main thread
+	 * @param helperIndex	index of the helper thread, 0 keeps the default order
+	 */
+	void varyColumnOrder(int helperIndex) {
+		if (helperIndex <= 0) {
+			return;
 		}
+		
+		int col = (helperIndex - 1) % (AppConfig.boardWidth - 1);
+		int tmp = columnOrder[col];
+		columnOrder[col] = columnOrder[col + 1];
+		columnOrder[col + 1] = tmp;
+	}
+	
+	
+	/**
+	 * defines if every search starts a new generation of the transposition table. the solvers that share a table
+	 * do not change the generation, otherwise the entries of the other threads of the same search would be old
+	 * @param agesTable		true if the solver starts a new generation for every search
+	 */
+	void setAgesTable(boolean agesTable) {
+		this.agesTable = agesTable;
+	}
+
+
+	/**
+	 * sets the heuristics that define the exploration order of the moves
+	 * @param moveOrdering	the move ordering heuristics
+	 */
+	public void setMoveOrdering(MoveOrdering moveOrdering) {
+		this.moveOrdering = moveOrdering;
+	}
+
+
+	/**
+	 * aborts the running search as fast as possible, the aborted search throws a SearchAbortedException and does
+	 * not add any entries to the transposition table
+	 */
+	void stop() {
+		stopped = true;
+	}
+	
+	
+	/**
+	 * allows the solver to search again after it was stopped
+	 */
+	void resetStop() {
+		stopped = false;
 	}
 	
 	
@@ -115,7 +276,67 @@ public class Connect4Solver {
 	 * @return 			the score
 	 */
 	public byte findBestScore(Position position) {		
-		return solve(position);
+		startMetrics();
+		byte score = solve(position);
+		stopMetrics();
+		return score;
+	}
+	
+	
+	/**
+	 * checks with a null window search if the score of the passed position is larger than the passed score,
+	 * this is a lot faster than finding the exact score. the books of the weak solver only know if a position
+	 * is won, drawn or lost, the weak solver can therefore only compare with the scores -1 and 0
+	 * @param position	the connect4 position
+	 * @param score		the score to compare with
+	 * @return 			true if the score of the position is larger than the passed score
+	 */
+	public boolean isScoreGreater(Position position, byte score) {
+		startMetrics();
+		
+		// the search plays the moves on a copy of the position
+		position = new Position(position);
+		
+		boolean isGreater;
+		if (position.canWinNext()) { 		// this case is not checked by negamax
+			isGreater = (AppConfig.boardSize+1 - position.getMoveCount()) / 2 > score;
+		} else {
+			byte storedScore = storedScore(position);
+			if (storedScore != SolvedPositionStore.notFound) {
+				isGreater = storedScore > score;
+			} else {
+				if (SolverMetrics.enabled) {
+					metrics.nullWindowSearches++;
+				}
+				isGreater = negamax(position, score, (byte) (score + 1)) > score;
+			}
+		}
+		
+		stopMetrics();
+		return isGreater;
+	}
+	
+	
+	/**
+	 * resets the counters of the last solve
+	 */
+	private void startMetrics() {
+		if (SolverMetrics.enabled) {
+			metrics.reset();
+			metricsStartTime = System.nanoTime();
+		}
+	}
+	
+	
+	/**
+	 * adds the counters of the last solve to the total counters
+	 */
+	private void stopMetrics() {
+		if (SolverMetrics.enabled) {
+			metrics.solves = 1;
+			metrics.solveTimeNanos = System.nanoTime() - metricsStartTime;
+			totalMetrics.add(metrics);
+		}
 	}
 	
 	
@@ -126,7 +347,14 @@ public class Connect4Solver {
 	 * @return  		best score of the passed position
 	 */
 	private byte solve(Position position) {
-//		tpTable.clear(); 
+		// the cached bounds stay valid, entries of older searches are only replaced first
+		if (agesTable) {
+			tpTable.nextGeneration();
+		}
+		ageHistory();
+		
+		// the search plays the moves on a copy of the position
+		position = new Position(position);
 		
 		// check if the player can win with his next move, this case is not checked by negamax
 		byte moveCount = position.getMoveCount();
@@ -134,6 +362,12 @@ public class Connect4Solver {
 			return (byte) ((AppConfig.boardSize+1 - moveCount) / 2);
 		}
 
+		// positions that were already solved exactly do not need to be searched
+		byte storedScore = storedScore(position);
+		if (storedScore != SolvedPositionStore.notFound) {
+			return isStrongSolver ? storedScore : (byte) Integer.signum(storedScore);
+		}
+
 		// apply the idea of iterative deepening and do a different search strategy
 		byte min, max;
 		if (isStrongSolver) {
@@ -153,6 +387,9 @@ public class Connect4Solver {
 			}
 
 			// use a null depth window to know if the actual score is greater or smaller than med
+			if (SolverMetrics.enabled) {
+				metrics.nullWindowSearches++;
+			}
 			byte r = negamax(position, med, (byte) (med + 1));   
 			if (r <= med) {
 				max = r;
@@ -161,9 +398,166 @@ public class Connect4Solver {
 			}
 		}
 		
+		if (isStrongSolver) {
+			storeScore(position, min);
+		}
 		return min;
 	}
 	
+	
+	/**
+	 * looks up the exact score of the passed position in the solved position store
+	 * @param position 	the position to look up
+	 * @return 			the score or SolvedPositionStore.notFound if the position was not solved before
+	 */
+	private byte storedScore(Position position) {
+		if (solvedStore == null) {
+			return SolvedPositionStore.notFound;
+		}
+		
+		byte score = solvedStore.get(position.toCanonicalKey());
+		if (SolverMetrics.enabled && score != SolvedPositionStore.notFound) {
+			metrics.storeHits++;
+		}
+		return score;
+	}
+	
+	
+	/**
+	 * appends the exact score of the passed position to the solved position store
+	 * @param position 	the solved position
+	 * @param score 	the exact score of the position
+	 */
+	private void storeScore(Position position, byte score) {
+		if (solvedStore == null) {
+			return;
+		}
+		
+		try {
+			solvedStore.put(position.toCanonicalKey(), score);
+		} catch (IOException e) {
+			log.warning("error adding a position to the solved position store: " + e.getMessage());
+		}
+	}
+	
+
+
+	/**
+	 * looks up the children of the passed position in the transposition table and in the nply book. the upper bound
+	 * of a child is a lower bound of the position, the search of the position can be skipped if it is at least beta
+	 * @param position			the current position, it is the same after the method returns
+	 * @param nonLosingMoves	mask of the moves that are explored
+	 * @param moveCount			number of moves played in the position
+	 * @param beta				upper window bound
+	 * @return					the best lower bound of the position that is at least beta or
+	 * 							Byte.MIN_VALUE if no child refutes the position
+	 */
+	private byte childCutoffScore(Position position, long nonLosingMoves, int moveCount, byte beta) {
+		boolean bookChildren = nplyBook.contains(moveCount + 1);
+		byte best = Byte.MIN_VALUE;
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			long move = nonLosingMoves & Position.columnMask(col);
+			if (move == 0) {
+				continue;
+			}
+			
+			position.play(move);
+			long childKey = position.toCanonicalKey();
+			byte childUpper = Byte.MAX_VALUE;
+			if (bookChildren) {
+				byte score = nplyBook.get(childKey, moveCount + 1);
+				if (score != NplyBook.notFound) {
+					childUpper = score;
+				}
+			} else {
+				byte cachedScore = tpTable.get(childKey);
+				if (cachedScore != 0) {
+					childUpper = (byte) (cachedScore + AppConfig.minScore - 1);
+				}
+			}
+			position.undo(move);
+			
+			if (-childUpper >= beta && -childUpper > best) {
+				best = (byte) -childUpper;
+			}
+		}
+		return best;
+	}
+
+
+	/**
+	 * returns the sort key of the passed move, moves with a larger key are explored first
+	 * @param position		the current position
+	 * @param move			move mask of a non losing move
+	 * @param moveCount		number of moves played in the position
+	 * @return 				number of winning chances created by the move, the lower bits are defined by the heuristics
+	 */
+	private int moveKey(Position position, long move, int moveCount) {
+		int key = position.moveScore(move) << threatShift;
+		if (moveOrdering.useKillers() && (move == killerMoves[moveCount][0] || move == killerMoves[moveCount][1])) {
+			key += killerBonus;
+		}
+		if (moveOrdering.useHistory()) {
+			key += history[moveCount & 1][Long.numberOfTrailingZeros(move)];
+		}
+		return key;
+	}
+
+
+	/**
+	 * updates the killer moves and the history after a move caused a cutoff
+	 * @param move			move mask of the move that caused the cutoff
+	 * @param moveCount		number of moves played in the position
+	 */
+	private void updateHeuristics(long move, int moveCount) {
+		long[] killers = killerMoves[moveCount];
+		if (killers[0] != move) {
+			killers[1] = killers[0];
+			killers[0] = move;
+		}
+
+		int remainingMoves = AppConfig.boardSize - moveCount;
+		int[] playerHistory = history[moveCount & 1];
+		int cell = Long.numberOfTrailingZeros(move);
+		playerHistory[cell] += remainingMoves * remainingMoves;
+		if (playerHistory[cell] > maxHistory) {
+			ageHistory();
+		}
+	}
+
+
+	/**
+	 * halves the history of all moves, recent cutoffs get more weight than the ones of older searches
+	 */
+	private void ageHistory() {
+		for (int[] playerHistory : history) {
+			for (int cell=0; cell<playerHistory.length; cell++) {
+				playerHistory[cell] >>= 1;
+			}
+		}
+	}
+
+
+	/**
+	 * returns a measure for the work needed to search a subtree, it is the number of bits of the node count
+	 * @param startNodeCount	node count before the subtree was searched
+	 * @return 					logarithm of the number of nodes in the subtree
+	 */
+	private int work(long startNodeCount) {
+		return Long.SIZE - Long.numberOfLeadingZeros(nodeCount - startNodeCount);
+	}
+
+
+	/**
+	 * returns the column of the passed move in the position with the canonical key
+	 * @param move			move mask
+	 * @param mirrored		true if the position is the mirror of the position with the canonical key
+	 * @return
+	 */
+	private static int canonicalColumn(long move, boolean mirrored) {
+		int col = Long.numberOfTrailingZeros(move) / (AppConfig.boardHeight + 1);
+		return mirrored ? AppConfig.boardWidth - 1 - col : col;
+	}
 
 
 	/**
@@ -171,19 +565,33 @@ public class Connect4Solver {
 	 * a better move exploration order was introduces. a score function based on possible winning chances
 	 * decides which move will be explored first. this moves usually lead to a faster victory.
 	 * if the score is equal the old order of central columns first is kept.
-	 * @param position 		connect4 position
+	 * the moves are played and undone on the passed position and the move sorters are reused for each ply,
+	 * this way the search does not create any objects
+	 * @param position 		connect4 position, it is the same after the method returns
 	 * @param alpha 		lower window bound 
 	 * @param beta 			upper window bound
 	 * @return				score according to the alpha, beta algorithm (see comment in the constructor)
 	 */
 	private byte negamax(Position position, byte alpha, byte beta) {
-		// check if the position can be found in the 8ply position table
+		if (stopped) {
+			throw SearchAbortedException.instance;
+		}
+		if (SolverMetrics.enabled) {
+			metrics.nodes++;
+		}
+		long startNodeCount = nodeCount++;
+		
+		// a position and its mirrored position have the same score, they share the same key
+		long positionKey = position.toCanonicalKey();
+		
+		// check if the position can be found in the nply book of its depth
 		byte moveCount = position.getMoveCount();
-		if (moveCount == nplyTranspositions) {
-			byte score = nplyPositionMap.getOrDefault(position.toKey(), Byte.MIN_VALUE);
-			if (score != Byte.MIN_VALUE) {
-				return score;
+		byte bookScore = nplyBook.get(positionKey, moveCount);
+		if (bookScore != NplyBook.notFound) {
+			if (SolverMetrics.enabled) {
+				metrics.bookHits++;
 			}
+			return bookScore;
 		}
 		
 		// do not explore the position if there are no non losing moves
@@ -213,10 +621,17 @@ public class Connect4Solver {
 
 		// define the maximal possible score in this position
 		byte max = (byte) ((AppConfig.boardSize-1 - moveCount) / 2);
-		byte cachedScore = tpTable.get(position.toKey());
+		byte cachedScore = tpTable.get(positionKey);
 		if (cachedScore != 0) {
 			max = (byte) (cachedScore + AppConfig.minScore - 1);
 		}
+		byte cachedLower = tpTable.getLower(positionKey);
+		if (SolverMetrics.enabled) {
+			metrics.tpProbes++;
+			if (cachedScore != 0 || cachedLower != 0) {
+				metrics.tpHits++;
+			}
+		}
 
 		if (beta > max) {
 			// there is no need to keep beta above our max possible score.
@@ -227,17 +642,48 @@ public class Connect4Solver {
 				return beta;  
 			}
 		}
+		
+		// raise alpha to the cached lower bound
+		if (cachedLower != 0) {
+			byte lower = (byte) (cachedLower + AppConfig.minScore - 1);
+			if (alpha < lower) {
+				alpha = lower;
+				if (alpha >= beta) {
+					return alpha;
+				}
+			}
+		}
+		
+		// enhanced transposition cutoff, a cached bound of a child can refute the position without searching
+		byte etcScore = childCutoffScore(position, nonLosingMoves, moveCount, beta);
+		if (etcScore >= beta) {
+			if (SolverMetrics.enabled) {
+				metrics.etcCutoffs++;
+			}
+			tpTable.putLower(positionKey, (byte) (etcScore - AppConfig.minScore + 1), 0, -1); 	// save the lower bound
+			return etcScore;
+		}
 
 
 		// fill the move sorter with the exploration moves (only non losing moves)
-		MoveSorter moveSorter = new MoveSorter();
+		MoveSorter moveSorter = moveSorters[moveCount];
+		moveSorter.reset();
 		for (int i = AppConfig.boardWidth - 1; i > -1; i--) {
 			long move = nonLosingMoves & Position.columnMask(columnOrder[i]);
 			if (move > 0) {
-				moveSorter.add(move, position.moveScore(move));
+				moveSorter.add(move, moveKey(position, move, moveCount));
 			}
 		}
 
+		
+		// explore the best move of an earlier search first, the move is saved for the position with the canonical key
+		boolean mirrored = positionKey != position.toKey();
+		int hashMove = tpTable.getMove(positionKey);
+		if (hashMove >= 0) {
+			moveSorter.moveFirst(nonLosingMoves & Position.columnMask(mirrored ? AppConfig.boardWidth - 1 - hashMove : hashMove));
+		}
+
+		int bestMove = -1; 		// column of the move that raised alpha
 		long[] explorationMoves = moveSorter.getMoves();	
 		for (int i=moveSorter.size(); i>0; i--) {
 			// move mask will always be larger than 0, 0 is used to mark no move, break the loop if there are no more moves
@@ -246,13 +692,20 @@ public class Connect4Solver {
 				break;
 			}
 			
-			Position positionClone = new Position(position);
-			positionClone.play(move);
-			byte score = (byte) -negamax(positionClone, (byte) -beta, (byte) -alpha);
+			position.play(move);
+			byte score = (byte) -negamax(position, (byte) -beta, (byte) -alpha);
+			position.undo(move);
 
 			
 			// prune the exploration if we find a possible move better than what we were looking for
 			if (score >= beta) {
+				if (SolverMetrics.enabled) {
+					metrics.cutoffs[moveSorter.size() - i]++;
+				}
+				if (moveOrdering != MoveOrdering.THREATS) {
+					updateHeuristics(move, moveCount);
+				}
+				tpTable.putLower(positionKey, (byte) (score - AppConfig.minScore + 1), work(startNodeCount), canonicalColumn(move, mirrored)); 	// save the lower bound
 				return score;
 			}
 
@@ -260,11 +713,15 @@ public class Connect4Solver {
 			// better than the current best
 			if (score > alpha) {
 				alpha = score; 
+				bestMove = canonicalColumn(move, mirrored);
 			}
 		}
 		
 
-		tpTable.put(position.toKey(), (byte) (alpha - AppConfig.minScore + 1)); // save the upper bound of the position
+		boolean overwritten = tpTable.put(positionKey, (byte) (alpha - AppConfig.minScore + 1), work(startNodeCount), bestMove); // save the upper bound of the position
+		if (SolverMetrics.enabled && overwritten) {
+			metrics.tpOverwrites++;
+		}
 		return alpha;
 	}	
 	
@@ -276,6 +733,8 @@ public class Connect4Solver {
 	 * @return 			a list with all optimal moves
 	 */
 	public SolvedPosition findOptimalMoves(Position position) {		
+		startMetrics();
+		
 		// save all the moves and the score in the position to solve
 		List<Integer> moveList = new ArrayList<>();				// holds all possible moves in the position to solve
 		List<Integer> scoreList = new ArrayList<>();			// caches the scores of all possible moves
@@ -304,6 +763,47 @@ public class Connect4Solver {
 		SolvedPosition solvedPosition = new SolvedPosition(position);
 		solvedPosition.addResult(moveList, scoreList);
 		
+		stopMetrics();
 		return solvedPosition;
 	}
+	
+	
+	/**
+	 * saves the transposition table to a snapshot file, the solver must not search while the table is saved
+	 * @param filePath		path of the snapshot file
+	 * @throws IOException
+	 */
+	public void saveTranspositionTable(String filePath) throws IOException {
+		tpTable.save(filePath);
+	}
+	
+	
+	/**
+	 * loads the transposition table from a snapshot file that was saved by a solver with the same table size,
+	 * this way the solver starts with the bounds found by an earlier run
+	 * @param filePath		path of the snapshot file
+	 * @throws IOException	if the file is not a snapshot of a table with the same size
+	 */
+	public void loadTranspositionTable(String filePath) throws IOException {
+		tpTable.load(filePath);
+	}
+	
+	
+	/**
+	 * returns the counters of the last call of findBestScore or findOptimalMoves, the counters are only
+	 * updated if the metrics are enabled in the configuration file
+	 * @return
+	 */
+	public SolverMetrics getMetrics() {
+		return metrics;
+	}
+	
+	
+	/**
+	 * returns the counters of all positions solved by this solver
+	 * @return
+	 */
+	public SolverMetrics getTotalMetrics() {
+		return totalMetrics;
+	}
 }
@@ -0,0 +1,29 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+/**
+ * heuristics that define the exploration order of the moves in the solver. the number of winning chances
+ * that a move creates is always the main criterion, the heuristics only order the moves with the same number
+ * of winning chances. moves that are still equal are explored with the central columns first
+ */
+public enum MoveOrdering {
+	THREATS(false, false), 			// only the winning chances and the central columns
+	KILLERS(true, false), 			// moves that caused a cutoff in another position with the same number of moves first
+	HISTORY(false, true), 			// moves that caused cutoffs in large subtrees anywhere in the search first
+	KILLERS_HISTORY(true, true); 	// killer moves first, then the moves with the larger history
+
+	private boolean useKillers;
+	private boolean useHistory;
+	
+	private MoveOrdering(boolean useKillers, boolean useHistory) {
+		this.useKillers = useKillers;
+		this.useHistory = useHistory;
+	}
+
+	public boolean useKillers() {
+		return useKillers;
+	}
+
+	public boolean useHistory() {
+		return useHistory;
+	}
+}
@@ -0,0 +1,134 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.wenkst.connect4.connect4_nply.game.HashNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.MappedNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.sw_utils.logging.Log;
+
+public class NplyBookLoader {
+	private static Log log = Log.getLogger(NplyBookLoader.class);
+	private static final int hashBookEntryBytes = 24; 		// heap memory of a position in a parsed csv book, including the free slots of the map
+
+	private String dirPath; 											// directory with the book files
+	private long heapMemory; 											// memory of the books that are copied to the heap in bytes
+	private long mappedMemory; 											// memory of the books that are memory mapped in bytes
+	private Map<Integer, NplyBook> nplyBooks = new HashMap<>(); 		// loaded books of the strong solvers, null if a depth is not used
+	private Map<Integer, NplyBook> weakNplyBooks = new HashMap<>(); 	// loaded books of the weak solvers, null if a depth is not used
+	private long usedHeapMemory; 										// heap memory of all loaded books in bytes
+	private long usedMappedMemory; 										// size of all mapped book files in bytes
+
+
+	/**
+	 * loads the nply books of a directory within two memory budgets, every book is only loaded once and then
+	 * shared by all solvers as it is never modified
+	 * @param dirPath			directory with the book files, ends with a separator
+	 * @param heapMemory		memory of the books that are copied to the heap in bytes
+	 * @param mappedMemory		memory of the books that are memory mapped in bytes
+	 */
+	public NplyBookLoader(String dirPath, long heapMemory, long mappedMemory) {
+		this.dirPath = dirPath;
+		this.heapMemory = heapMemory;
+		this.mappedMemory = mappedMemory;
+	}
+
+
+	/**
+	 * returns the nply book. the books need to be loaded from the smallest nply on, the binary book is copied to
+	 * the heap as long as it fits into the heap budget and memory mapped as long as it fits into the mapped budget.
+	 * the weak solver only needs to know if a position is won, drawn or lost, on the heap it uses the smaller weak
+	 * book. if there is no binary book the merged csv-file is parsed if the positions of all its lines fit into the
+	 * heap budget
+	 * @param nply			number of moves played in the positions of the book
+	 * @param weak			true if the book is used by a weak solver
+	 * @return				book with the scores of all nply positions or null if there is no book for the nply
+	 * 						or if it does not fit into the memory budgets
+	 * @throws IOException
+	 */
+	public synchronized NplyBook load(int nply, boolean weak) throws IOException {
+		Map<Integer, NplyBook> books = weak ? weakNplyBooks : nplyBooks;
+		if (books.containsKey(nply)) {
+			return books.get(nply);
+		}
+
+		NplyBook nplyBook = null;
+		String bookFilePath = dirPath + "connect4_" + nply + "ply.book";
+		String csvFilePath = dirPath + "connect4_" + nply + "ply.csv";
+		if (new File(bookFilePath).exists()) {
+			MappedNplyBook mappedBook = MappedNplyBook.open(bookFilePath, nply);
+			long memory = mappedBook.fileSize();
+			long weakMemory = mappedBook.weakBookMemory();
+			if (weak && usedHeapMemory + weakMemory <= heapMemory) {
+				nplyBook = mappedBook.toWeakBook();
+				usedHeapMemory += weakMemory;
+				log.fine("created the weak " + nply + "ply position table, size: " + nplyBook.size());
+
+			} else if (!weak && usedHeapMemory + memory <= heapMemory) {
+				nplyBook = mappedBook.toArrayBook();
+				usedHeapMemory += memory;
+				log.fine("copied the binary " + nply + "ply position table to the heap, size: " + nplyBook.size());
+
+			} else if (usedMappedMemory + memory <= mappedMemory) {
+				nplyBook = mappedBook;
+				usedMappedMemory += memory;
+				log.fine("mapped the binary " + nply + "ply position table, size: " + nplyBook.size());
+
+			} else {
+				log.info("the " + nply + "ply position table does not fit into the memory budget of the books, it is not used");
+			}
+
+		} else if (new File(csvFilePath).exists()) {
+			// every line except the header is a position, mirrored positions of the file share one entry
+			long memory = Math.max(countLines(csvFilePath) - 1, 0) * hashBookEntryBytes;
+			if (usedHeapMemory + memory <= heapMemory) {
+				log.fine("start to read in the " + nply + "ply position table, create the binary table with Main_MergeCsvFiles to avoid parsing the csv-file");
+				nplyBook = HashNplyBook.fromCsv(csvFilePath);
+				usedHeapMemory += nplyBook.size() * hashBookEntryBytes;
+				log.fine("finsihed creating the " + nply + "ply position table, size: " + nplyBook.size());
+			} else {
+				log.info("the " + nply + "ply position table does not fit into the heap budget of the books, the csv-file is not parsed");
+			}
+
+		} else {
+			log.fine("there is no " + nply + "ply position table");
+		}
+
+		books.put(nply, nplyBook);
+		return nplyBook;
+	}
+
+
+	/**
+	 * counts the lines of a file, the last line does not need to end with a line break
+	 * @param filePath		path of the file
+	 * @return				number of lines
+	 * @throws IOException
+	 */
+	private static long countLines(String filePath) throws IOException {
+		long lines = 0;
+		byte lastByte = '\n';
+		ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			while (channel.read(buffer) > 0) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					lastByte = buffer.get();
+					if (lastByte == '\n') {
+						lines++;
+					}
+				}
+				buffer.clear();
+			}
+		}
+
+		return lastByte == '\n' ? lines : lines + 1;
+	}
+}
@@ -0,0 +1,292 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.game.SolvedPosition;
+import ch.wenkst.connect4.connect4_nply.game.TranspositionTable;
+
+public class ParallelSolver {
+	private Connect4Solver[] solvers; 			// one solver per thread, all solvers share the same transposition table
+	private BlockingQueue<Connect4Solver> idleSolvers; 	// solvers that are not used by a search of a root move
+	private ExecutorService executor; 			// executes the searches of the solvers
+	private boolean isStrongSolver; 			// true if the exact score of the position should be found
+	private TranspositionTable tpTable; 		// transposition table shared by all solvers
+
+
+	/**
+	 * solver for connect4 that uses many threads to solve one position, the threads share a bucket transposition
+	 * table with the configured memory that saves both bounds and the best move
+	 * @param threads				number of threads that search the position
+	 * @param isStrongSolver		true if the exact score of the position should be found
+	 * @param nplyTranspositions	nply transposition table that should be used by the solver
+	 */
+	public ParallelSolver(int threads, boolean isStrongSolver, int nplyTranspositions) {
+		this(threads, isStrongSolver, nplyTranspositions, Connect4Solver.createSharedTpTable());
+	}
+
+
+	/**
+	 * solver for connect4 that uses many threads to solve one position in the style of lazy smp.
+	 * all threads search the same position with a slightly different move exploration order and share one
+	 * transposition table. this way the threads profit from the bounds and the best moves found by the other threads.
+	 * all cached bounds are valid for every thread, the first thread that finishes has therefore the exact score.
+	 * the parallel solver starts one generation of the table per solved position, the entries of all threads
+	 * of the same search therefore belong to the current generation
+	 * @param threads				number of threads that search the position
+	 * @param isStrongSolver		true if the exact score of the position should be found
+	 * @param nplyTranspositions	nply transposition table that should be used by the solver
+	 * @param tpTable				transposition table that is shared by all threads, needs to be thread safe
+	 */
+	public ParallelSolver(int threads, boolean isStrongSolver, int nplyTranspositions, TranspositionTable tpTable) {
+		this.isStrongSolver = isStrongSolver;
+		this.tpTable = tpTable;
+		solvers = new Connect4Solver[threads];
+		idleSolvers = new ArrayBlockingQueue<>(threads);
+		for (int i=0; i<threads; i++) {
+			solvers[i] = new Connect4Solver(isStrongSolver, nplyTranspositions, tpTable);
+			solvers[i].varyColumnOrder(i);
+			solvers[i].setAgesTable(false);
+			idleSolvers.add(solvers[i]);
+		}
+
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "parallel-solver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	/**
+	 * finds the best score of the passed position if both players play optimal
+	 * @param position	the connect4 position
+	 * @return 			the score
+	 */
+	public byte findBestScore(Position position) {
+		tpTable.nextGeneration();
+		return searchBestScore(position);
+	}
+
+
+	/**
+	 * searches the position with all threads, the first thread that finishes has the exact score
+	 * @param position	the connect4 position
+	 * @return 			the score
+	 */
+	private byte searchBestScore(Position position) {
+		CompletionService<Byte> completionService = new ExecutorCompletionService<>(executor);
+		List<Future<Byte>> futures = new ArrayList<>();
+		for (Connect4Solver solver : solvers) {
+			futures.add(completionService.submit(() -> solver.findBestScore(position)));
+		}
+
+		try {
+			return completionService.take().get();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for the parallel search", e);
+
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("error in the parallel search", e.getCause());
+
+		} finally {
+			stopSearch(futures);
+		}
+	}
+
+
+	/**
+	 * finds the optimal moves of the passed position. the moves are searched in parallel, for a symmetric
+	 * position only the columns on one side are searched because the mirrored columns have the same score.
+	 * the first move is solved by all threads, the other moves are only checked with a null window search
+	 * if they are worse than the best move found so far. only the moves that are not worse are solved
+	 * exactly. the scores of the other moves are bounds that keep the strong and the weak result correct
+	 * @param position	the connect4 position
+	 * @return 			the solved position
+	 */
+	public SolvedPosition findOptimalMoves(Position position) {
+		tpTable.nextGeneration();
+		int moveCount = position.getMoveCount();
+		boolean isSymmetric = position.toKey() == position.mirror().toKey();
+		byte winningScore = (byte) -((AppConfig.boardSize+1 - moveCount) / 2); 	// opponent score after a winning move
+		
+		// get the moves to search, the central columns first as they are usually the better moves
+		byte[] scores = new byte[AppConfig.boardWidth];
+		boolean[] legalMoves = new boolean[AppConfig.boardWidth];
+		List<Integer> searchColumns = new ArrayList<>();
+		boolean canWin = false;
+		for (int i=0; i<AppConfig.boardWidth; i++) {
+			int sign = i % 2 == 0 ? 1 : -1;
+			int col = AppConfig.boardWidth/2 + (int) Math.ceil((double) i/2) * sign;
+			if (!position.legalMove(col)) {
+				continue;
+			}
+			
+			legalMoves[col] = true;
+			if (position.isWinningMove(col)) {
+				scores[col] = winningScore;
+				canWin = true;
+			} else if (!isSymmetric || col <= AppConfig.boardWidth/2) {
+				searchColumns.add(col);
+			}
+		}
+		
+		// the smallest opponent score is the best score, solve the first move exactly if there is no winning move
+		byte bestScore = winningScore;
+		if (!canWin && !searchColumns.isEmpty()) {
+			int col = searchColumns.remove(0);
+			scores[col] = searchBestScore(child(position, col));
+			bestScore = scores[col];
+		}
+
+		// check the other moves in parallel
+		byte bound = bestScore;
+		Map<Integer, Future<Byte>> futures = new HashMap<>();
+		for (int col : searchColumns) {
+			Position child = child(position, col);
+			futures.put(col, executor.submit(() -> searchRootMove(child, bound)));
+		}
+		
+		try {
+			for (Map.Entry<Integer, Future<Byte>> entry : futures.entrySet()) {
+				scores[entry.getKey()] = entry.getValue().get();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for the parallel search", e);
+
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("error in the parallel search", e.getCause());
+		}
+		
+		// the mirrored columns of a symmetric position have the same score
+		List<Integer> moveList = new ArrayList<>();
+		List<Integer> scoreList = new ArrayList<>();
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			if (legalMoves[col]) {
+				int searchedCol = isSymmetric ? Math.min(col, AppConfig.boardWidth-1 - col) : col;
+				moveList.add(col);
+				scoreList.add((int) (position.isWinningMove(col) ? winningScore : scores[searchedCol]));
+			}
+		}
+		
+		SolvedPosition solvedPosition = new SolvedPosition(position);
+		solvedPosition.addResult(moveList, scoreList);
+		return solvedPosition;
+	}
+	
+	
+	/**
+	 * searches a move of the root position with one of the idle solvers
+	 * @param child			the position after the move was played
+	 * @param bestScore		the best opponent score of all moves found so far
+	 * @return				the exact score of the child if it is not larger than the best score, otherwise a bound:
+	 * 						-1 if the score is negative, 0 if it is not negative and best score + 1 if the best score
+	 * 						is at least -1 (the sign is known in this case)
+	 * @throws InterruptedException
+	 */
+	private byte searchRootMove(Position child, byte bestScore) throws InterruptedException {
+		Connect4Solver solver = idleSolvers.take();
+		try {
+			if (!isStrongSolver || !solver.isScoreGreater(child, bestScore)) {
+				return solver.findBestScore(child);
+			}
+
+			// the move is worse than the best move, only the sign of the score is needed for the weak result
+			if (bestScore >= -1) {
+				return (byte) (bestScore + 1);
+			}
+			return solver.isScoreGreater(child, (byte) -1) ? 0 : (byte) -1;
+
+		} finally {
+			idleSolvers.add(solver);
+		}
+	}
+	
+	
+	/**
+	 * returns the position after the passed column was played
+	 * @param position	the connect4 position
+	 * @param col		the column to play
+	 * @return			a new position with the move played
+	 */
+	private Position child(Position position, int col) {
+		Position child = new Position(position);
+		child.play(col);
+		return child;
+	}
+
+
+	/**
+	 * stops all solvers and waits until all searches are aborted
+	 * @param futures	futures of the running searches
+	 */
+	private void stopSearch(List<Future<Byte>> futures) {
+		for (Connect4Solver solver : solvers) {
+			solver.stop();
+		}
+
+		boolean interrupted = false;
+		for (Future<Byte> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (ExecutionException e) {
+				// the aborted searches end with an exception
+			}
+		}
+
+		for (Connect4Solver solver : solvers) {
+			solver.resetStop();
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * saves the shared transposition table to a snapshot file, no position must be solved while the table is saved
+	 * @param filePath		path of the snapshot file
+	 * @throws IOException
+	 */
+	public void saveTranspositionTable(String filePath) throws IOException {
+		tpTable.save(filePath);
+	}
+
+
+	/**
+	 * loads the shared transposition table from a snapshot file that was saved by a solver with the same table size
+	 * @param filePath		path of the snapshot file
+	 * @throws IOException	if the file is not a snapshot of a table with the same size
+	 */
+	public void loadTranspositionTable(String filePath) throws IOException {
+		tpTable.load(filePath);
+	}
+
+
+	/**
+	 * stops the threads of the solver
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
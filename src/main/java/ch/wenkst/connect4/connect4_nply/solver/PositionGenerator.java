@@ -0,0 +1,420 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.sw_utils.logging.Log;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+public class PositionGenerator {
+	private static Log log = Log.getLogger(PositionGenerator.class);
+	private static final long[] positionCounts = {1, 7, 49, 238, 1120, 4263, 16422, 54859, 184275, 558186, 1662623,
+			4568683, 12236101, 30929111, 75437595, 176541259, 394591391, 858218743}; 	// legal positions for every move count (oeis A212693)
+	private int nply; 								// the number of moves played in the generated positions
+
+
+	/**
+	 * generates all legal nply positions that are not won within the next 2 moves. the game tree is
+	 * explored depth first directly on the bitboards, the columns are played from left to right. a position
+	 * that was already visited with the same or the mirrored disks is not explored again because its subtree
+	 * is already known
+	 * @param nply		the number of moves played in the generated positions
+	 */
+	public PositionGenerator(int nply) {
+		this.nply = nply;
+	}
+
+
+	/**
+	 * generates all positions with one thread and writes them to the passed csv printer. the positions are
+	 * written in the same order and with the same mirror representative as if all column sequences were
+	 * played in lexicographic order
+	 * @param csvPrinter		printer to which the positions are written (position, disk mask)
+	 * @return					number of generated positions
+	 * @throws IOException
+	 */
+	public long generate(CSVPrinter csvPrinter) throws IOException {
+		long[] positionCount = new long[1];
+		TreeExplorer explorer = new TreeExplorer(0, nply, null) {
+			@Override
+			protected void leaf(Position position) {
+				if (!position.isWon()) {
+					try {
+						csvPrinter.printRecord(position.getPosition(), position.getDiskMask());
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					positionCount[0]++;
+				}
+			}
+		};
+		
+		try {
+			explorer.explore(new Position());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		return positionCount[0];
+	}
+
+
+	/**
+	 * generates all positions in parallel and writes them to the passed csv printer. the game tree is split
+	 * into the subtrees of all positions after the first prefix moves, every subtree is explored by a separate
+	 * task. an inner position is claimed by the first worker that finds it in a set that is shared by all workers,
+	 * every worker only keeps the visited leaf positions of the subtree it currently explores. the positions are
+	 * written sorted by their canonical key, the representative of two mirrored positions is the one with the
+	 * smaller key
+	 * @param csvPrinter		printer to which the positions are written (position, disk mask)
+	 * @param threads			number of threads that explore the subtrees
+	 * @param prefixPly			number of moves played in the root positions of the subtrees
+	 * @return					number of generated positions
+	 * @throws IOException
+	 */
+	public long generateParallel(CSVPrinter csvPrinter, int threads, int prefixPly) throws IOException {
+		long[] keys = generateKeys(threads, prefixPly);
+		for (long key : keys) {
+			Position position = Position.fromKey(key);
+			csvPrinter.printRecord(position.getPosition(), position.getDiskMask());
+		}
+
+		return keys.length;
+	}
+
+
+	/**
+	 * generates the canonical keys of all positions in parallel, see generateParallel
+	 * @param threads			number of threads that explore the subtrees
+	 * @param prefixPly			number of moves played in the root positions of the subtrees
+	 * @return					canonical keys of all positions sorted in ascending order
+	 */
+	public long[] generateKeys(int threads, int prefixPly) {
+		int rootPly = Math.min(prefixPly, nply);
+
+		// collect the keys of the roots of all subtrees, the leaf position is changed after it was passed
+		LongArrayList prefixes = new LongArrayList();
+		TreeExplorer prefixExplorer = new TreeExplorer(0, rootPly, null) {
+			@Override
+			protected void leaf(Position position) {
+				prefixes.add(position.toKey());
+			}
+		};
+		prefixExplorer.explore(new Position());
+		log.fine("explore the subtrees of " + prefixes.size() + " " + rootPly + " ply positions with " + threads + " threads");
+
+		// explore the subtrees, an inner position is only explored by the first worker that claims it
+		ClaimSet claimed = new ClaimSet(innerPositionCount(rootPly));
+		List<SubtreeExplorer> explorers = new CopyOnWriteArrayList<>();
+		ThreadLocal<SubtreeExplorer> workerExplorer = ThreadLocal.withInitial(() -> {
+			SubtreeExplorer explorer = new SubtreeExplorer(rootPly, claimed);
+			explorers.add(explorer);
+			return explorer;
+		});
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.invoke(new SubtreeTask(prefixes, workerExplorer, 0, prefixes.size()));
+		} finally {
+			pool.shutdown();
+		}
+
+		// the same leaf can be found in different subtrees, merge the sorted keys of all workers
+		long[] keys = new long[0];
+		for (SubtreeExplorer explorer : explorers) {
+			long[] workerKeys = explorer.keys.toLongArray();
+			explorer.clear(); 		// free the memory of the visited positions
+			Arrays.parallelSort(workerKeys);
+			keys = mergeSorted(keys, unique(workerKeys));
+		}
+		log.fine("finished exploring the subtrees, positions found by all workers: " + keys.length);
+		return keys;
+	}
+
+
+	/**
+	 * estimates the number of distinct canonical inner positions of the subtrees, about half of the legal
+	 * positions are the mirror of another position
+	 * @param rootPly		number of moves played in the root positions of the subtrees
+	 * @return
+	 */
+	private long innerPositionCount(int rootPly) {
+		long count = 0;
+		for (int moveCount=rootPly; moveCount<nply; moveCount++) {
+			count += moveCount < positionCounts.length ? positionCounts[moveCount] / 2 + 1 : Long.MAX_VALUE / nply;
+		}
+		return count;
+	}
+
+
+	/**
+	 * removes the keys that appear more than once in a sorted array
+	 * @param keys		sorted array
+	 * @return			sorted array in which every key only appears once
+	 */
+	private static long[] unique(long[] keys) {
+		int size = 0;
+		for (int i=0; i<keys.length; i++) {
+			if (size == 0 || keys[i] != keys[size-1]) {
+				keys[size++] = keys[i];
+			}
+		}
+
+		return size == keys.length ? keys : Arrays.copyOf(keys, size);
+	}
+
+
+	/**
+	 * merges two sorted arrays, keys that are part of both arrays are only added once
+	 * @param a		sorted array without duplicates
+	 * @param b		sorted array without duplicates
+	 * @return		sorted array with all keys of both arrays
+	 */
+	private static long[] mergeSorted(long[] a, long[] b) {
+		long[] result = new long[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				result[size++] = a[i++];
+			} else if (a[i] > b[j]) {
+				result[size++] = b[j++];
+			} else {
+				result[size++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length) {
+			result[size++] = a[i++];
+		}
+		while (j < b.length) {
+			result[size++] = b[j++];
+		}
+
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+
+	private abstract static class TreeExplorer {
+		private int startPly; 							// number of moves played in the root position
+		private int endPly; 							// number of moves played in the leaf positions
+		private LongOpenHashSet[] visited; 				// canonical keys of the visited positions for every move count
+		private ClaimSet claimed; 						// inner positions that are explored by any thread, can be null
+
+		/**
+		 * explores the game tree depth first from a root position until the end ply is reached. with a claim set
+		 * the inner positions are only saved in the claim set, the visited sets only have the leaf positions
+		 * @param startPly		number of moves played in the root position
+		 * @param endPly		number of moves played in the leaf positions
+		 * @param claimed		inner positions that are explored by any thread, null if only one thread is used
+		 */
+		private TreeExplorer(int startPly, int endPly, ClaimSet claimed) {
+			this.startPly = startPly;
+			this.endPly = endPly;
+			this.claimed = claimed;
+			visited = new LongOpenHashSet[endPly-startPly+1];
+			for (int i=0; i<visited.length; i++) {
+				visited[i] = new LongOpenHashSet();
+			}
+		}
+
+
+		/**
+		 * explores the game tree of the passed root position
+		 * @param root		position with the start ply number of moves
+		 */
+		protected void explore(Position root) {
+			explore(root, startPly);
+		}
+
+
+		/**
+		 * explores all moves of the passed position
+		 * @param position		the current position, it is the same after the method returns
+		 * @param moveCount		number of moves played in the position
+		 */
+		private void explore(Position position, int moveCount) {
+			// skip positions that are already visited, mirrored positions have the mirrored subtree
+			// inner positions that are claimed by any thread, also by this one, are already explored
+			long key = position.toCanonicalKey();
+			if (claimed != null && moveCount < endPly) {
+				if (!claimed.claim(key)) {
+					return;
+				}
+			} else if (!visited[moveCount-startPly].add(key)) {
+				return;
+			}
+
+			if (moveCount == endPly) {
+				leaf(position);
+				return;
+			}
+
+			// the children are played and taken back on the same position
+			long diskMask = position.getDiskMask();
+			for (int col=0; col<AppConfig.boardWidth; col++) {
+				if (position.legalMove(col) && !position.isWinningMove(col)) {
+					position.play(col);
+					long move = position.getDiskMask() ^ diskMask;
+					explore(position, moveCount+1);
+					position.undo(move);
+				}
+			}
+		}
+
+
+		/**
+		 * removes all visited positions but keeps the memory of the sets to explore the next subtree
+		 */
+		protected void clearVisited() {
+			for (LongOpenHashSet positions : visited) {
+				positions.clear();
+			}
+		}
+
+
+		/**
+		 * removes all visited positions and frees their memory
+		 */
+		protected void clear() {
+			for (int i=0; i<visited.length; i++) {
+				visited[i] = new LongOpenHashSet();
+			}
+		}
+
+
+		/**
+		 * called once for every distinct leaf position
+		 * @param position		the leaf position, it is changed after the method returns and needs to be copied
+		 * 						to keep it
+		 */
+		protected abstract void leaf(Position position);
+	}
+
+
+	private class SubtreeExplorer extends TreeExplorer {
+		private LongArrayList keys; 				// canonical keys of the positions that are not won
+
+		/**
+		 * explores the subtrees of prefix positions and collects the canonical keys of the leaf positions. a leaf
+		 * that is part of more than one subtree is collected more than once
+		 * @param prefixPly		number of moves played in the root positions
+		 * @param claimed		inner positions that are explored by any worker
+		 */
+		private SubtreeExplorer(int prefixPly, ClaimSet claimed) {
+			super(prefixPly, nply, claimed);
+			keys = new LongArrayList();
+		}
+
+		@Override
+		protected void leaf(Position position) {
+			if (!position.isWon()) {
+				keys.add(position.toCanonicalKey());
+			}
+		}
+
+		@Override
+		protected void clear() {
+			super.clear();
+			keys = new LongArrayList();
+		}
+	}
+
+
+	private class SubtreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private LongArrayList prefixes;
+		private ThreadLocal<SubtreeExplorer> workerExplorer;
+		private int start;
+		private int end;
+
+		/**
+		 * explores the subtrees of the prefix positions between the start (included) and the end index
+		 * (not included), the task is split until only one subtree is left. neighboring prefixes share many
+		 * positions, the subtrees of a task therefore stay with the same worker as long as they are not stolen
+		 * @param prefixes			keys of the root positions of all subtrees
+		 * @param workerExplorer	explorer of the worker thread
+		 * @param start				start index of the subtrees to explore
+		 * @param end				end index (not included) of the subtrees to explore
+		 */
+		private SubtreeTask(LongArrayList prefixes, ThreadLocal<SubtreeExplorer> workerExplorer, int start, int end) {
+			this.prefixes = prefixes;
+			this.workerExplorer = workerExplorer;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new SubtreeTask(prefixes, workerExplorer, start, middle), new SubtreeTask(prefixes, workerExplorer, middle, end));
+				return;
+			}
+
+			// the claim set knows the explored inner positions, the visited leaves are only kept for one subtree
+			SubtreeExplorer explorer = workerExplorer.get();
+			explorer.explore(Position.fromKey(prefixes.getLong(start)));
+			explorer.clearVisited();
+		}
+	}
+
+
+	private static class ClaimSet {
+		private static final int maxSizeBits = 30; 		// largest size of the atomic array
+		private AtomicLongArray keys; 					// open addressing with linear probing, 0 is a free slot
+		private int mask; 								// size of the set minus 1
+
+		/**
+		 * set of position keys that can be used by many threads without any locks. a key is added with one compare
+		 * and set of the free slot, exactly one thread therefore claims every key. keys are never removed
+		 * @param expectedKeys		expected number of keys, the set has at least twice as many slots as long as
+		 * 							the size limit is not reached
+		 */
+		private ClaimSet(long expectedKeys) {
+			long slots = 2 * Math.min(expectedKeys, 1L << maxSizeBits);
+			int size = 1 << Math.min(64 - Long.numberOfLeadingZeros(Math.max(slots - 1, 1)), maxSizeBits);
+			keys = new AtomicLongArray(size);
+			mask = size - 1;
+		}
+
+
+		/**
+		 * adds the key to the set
+		 * @param key		position key, never 0
+		 * @return			true if the key was added by this call, false if it was already part of the set. if
+		 * 					the set is full every key is claimed
+		 */
+		private boolean claim(long key) {
+			int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+			for (int i=0; i<=mask; i++) {
+				long slotKey = keys.get(index);
+				if (slotKey == key) {
+					return false;
+				}
+				if (slotKey == 0) {
+					if (keys.compareAndSet(index, 0, key)) {
+						return true;
+					}
+					if (keys.get(index) == key) {
+						return false;
+					}
+				}
+				index = (index + 1) & mask;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+/**
+ * thrown by a solver that was stopped during the search. the exception does not contain a stack trace as it
+ * is only used to unwind the recursion
+ */
+class SearchAbortedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	static final SearchAbortedException instance = new SearchAbortedException();
+	
+	private SearchAbortedException() {
+		super("search aborted", null, false, false);
+	}
+}
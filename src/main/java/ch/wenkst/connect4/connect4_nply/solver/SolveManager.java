@@ -2,32 +2,42 @@ package ch.wenkst.connect4.connect4_nply.solver;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 
 import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
 import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.io.AsyncCsvWriter;
+import ch.wenkst.connect4.connect4_nply.io.NumericCsvReader;
 import ch.wenkst.sw_utils.conversion.Conversion;
 import ch.wenkst.sw_utils.logging.Log;
-import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
-import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 public class SolveManager {
 	private static Log log = Log.getLogger(SolveManager.class);
 	private AppConfig appConfig;
 
-	private ObjectArrayList<Position> positions; 			// holds the positions to solve				
 	private int nplys; 										// the number of plys
 	private String positionFilePath; 						// the path to the file containing all the positions
-	private Connect4Solver solver;
+	private ThreadLocal<SolveWorker> workers; 				// every worker thread owns its solver and transposition table
+	private List<SolveWorker> allWorkers; 					// the workers of all threads
+	private SolverMetricsMonitor metricsMonitor; 			// sums up the counters of all solvers
+	private AsyncCsvWriter solutionWriter; 					// saves the solutions of the checkpoints in a separate thread
+	private static final int writerCapacity = 1 << 16; 		// number of solutions that can wait for the writer thread
+	
+	private boolean tpSnapshots; 							// true if the transposition tables are saved to warm start the next run
+	private volatile int snapshotRequest; 					// increased at every checkpoint, the workers save their table after their current position
 
 
 	/**
@@ -39,13 +49,22 @@ public class SolveManager {
 		this.nplys = nplys;
 		
 		appConfig = AppConfig.getInstance();
-		positions = new ObjectArrayList<>();
 
 		// ensure that the csv-file directory exists
 		new File(AppConfig.dirSolvedPos).mkdirs();
 		positionFilePath = AppConfig.dirPositions + "positions_" + nplys + "ply.csv";
 		
-		solver = new Connect4Solver(true, nplyTranspositions);
+		// the worker of every thread loads the snapshot of the transposition table with its index
+		tpSnapshots = appConfig.getConfigValue("tpSnapshots", false);
+		metricsMonitor = new SolverMetricsMonitor();
+		allWorkers = new CopyOnWriteArrayList<>();
+		AtomicInteger workerCount = new AtomicInteger();
+		workers = ThreadLocal.withInitial(() -> {
+			SolveWorker worker = new SolveWorker(workerCount.getAndIncrement(), nplyTranspositions);
+			metricsMonitor.addSolver(worker.solver);
+			allWorkers.add(worker);
+			return worker;
+		});
 	}
 
 
@@ -59,226 +78,320 @@ public class SolveManager {
 			return;
 		}
 		
-		log.fine("start creating all " + nplys + " ply positions");
-		Long2ObjectMap<Position> positions = allPositions();
-		log.fine("finished creating the connect4 positions, non-winning: " + positions.size());
-
-
-		
-		removeSymmetric(positions); 	// take out the symmetric positions
-		positionsToCsv(positions); 		// write the positions to a csv-file
-	}
-	
-	
-	/**
-	 * creates all legal non-duplicate positions
-	 * @return	list of positions
-	 */
-	private Long2ObjectMap<Position> allPositions() {
-		Long2ObjectMap<Position> positions = new Long2ObjectLinkedOpenHashMap<>();
-				
-		long maxCombinations = (long) Math.pow(AppConfig.boardWidth, nplys);
-		for (long i=0; i<maxCombinations; i++) {
-			String columnSequence = Long.toString(i, AppConfig.boardWidth);
-			columnSequence = Conversion.padLeft(columnSequence, '0', nplys);	
-						
-			Position position = new Position();
-			boolean legalPosition = position.fromColumnSequence(columnSequence);
-			if (legalPosition && !position.isWon()) {
-				// only add non-duplicate positions
-				if (!positions.containsKey(position.toKey())) {
-					positions.put(position.toKey(), position);
-				}
-			}
-		}
-		
-		return positions;
-	}
-	
-	
-	/**
-	 * removes all symmetric positions
-	 * @param positions		map with connect positions
-	 */
-	private void removeSymmetric(Long2ObjectMap<Position> positions) {
-		// take out the symmetric positions
-		Map<Long, Position> positionsToDelete = new HashMap<>();
-		for (Position p : positions.values()) {
-			Position mirroredPosition = p.mirror();
-			long mirroredKey = mirroredPosition.toKey();
-			long positionKey = p.toKey();
-
-			// skip symmetric positions
-			if (mirroredKey == positionKey) {
-				continue;
-			}
-
-			// if the delete map does not contain both keys, remove the mirrored key from the positions
-			if (!positionsToDelete.containsKey(mirroredKey) && !positionsToDelete.containsKey(positionKey)) {
-				positionsToDelete.put(mirroredPosition.toKey(), mirroredPosition);
-				if (positions.get(mirroredPosition.toKey()) == null) {
-					log.severe("mirrored position no part of the set");
-				}
-			}
-		}
-		
-		System.out.println("pos-size:" + positions.size());
-		System.out.println("pos to delete size: " + positionsToDelete.size());
+		int generatorThreads = appConfig.getConfigValue("generatorThreads", 1);
+		int generatorPrefixPly = appConfig.getConfigValue("generatorPrefixPly", 4);
 		
-		for (long symPosKey : positionsToDelete.keySet()) {
-			positions.remove(symPosKey);
-		}
-		log.fine("finished taking out all symmetric positions position count: " + positions.size());
-	}
-	
-	
-	/**
-	 * saves the passed positions to a csv-file
-	 * @param positions
-	 */
-	private void positionsToCsv(Long2ObjectMap<Position> positions) {
+		log.fine("start creating all " + nplys + " ply positions");
 		new File(AppConfig.dirPositions).mkdirs();
-		try {			
+		try {
 			// add the header line
 			BufferedWriter writer = new BufferedWriter(new FileWriter(positionFilePath));
 			CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("position", "disk_mask"));
-			csvPrinter.flush();
 
-			// go through all solved positions and add them to the csv-file
-			for (Position p : positions.values()) {
-				csvPrinter.printRecord(
-						p.getPosition(),
-						p.getDiskMask());
-
-				// write the line to the file
-				csvPrinter.flush();
+			// with one thread the positions are written to the file as soon as they are found, in parallel they
+			// are written once all subtrees are explored and they are sorted by their key
+			PositionGenerator generator = new PositionGenerator(nplys);
+			long positionCount;
+			if (generatorThreads > 1) {
+				positionCount = generator.generateParallel(csvPrinter, generatorThreads, generatorPrefixPly);
+			} else {
+				positionCount = generator.generate(csvPrinter);
 			}
 
 			csvPrinter.close();
-			log.info("positions to solve successfully saved to: " + positionFilePath);
+			log.info("finished creating the connect4 positions, non-symmetric positions: " + positionCount + ", saved to: " + positionFilePath);
 
 		} catch (Exception e) {
-			log.severe("error saving solutions to: " + positionFilePath, e);
+			log.severe("error saving positions to: " + positionFilePath, e);
 		}
 	}
 
 
 	/**
-	 * solves the configured amount of connect4 positions
+	 * solves the configured amount of connect4 positions. the positions are parsed from the mapped csv-file and
+	 * solved in chunks of checkpoint positions. chunks for which the csv-file with the solutions already
+	 * exists are skipped, this way an interrupted run can just be restarted with the same configuration
 	 */
 	public void solvePositions() {
-		int startIndex = appConfig.getConfigValue("startIndex", -1);
+		int startIndex = appConfig.getConfigValue("startIndex", 0);
 		int endIndex = appConfig.getConfigValue("endIndex", -1);
 		int checkpoint = appConfig.getConfigValue("checkpoint", -1);
+		int threads = appConfig.getConfigValue("threads", 1);
+		int metricsLogInterval = appConfig.getConfigValue("metricsLogInterval", 60);
+		if (startIndex < 0) {
+			startIndex = 0;
+		}
+		if (checkpoint <= 0) {
+			checkpoint = Integer.MAX_VALUE;
+		}
 		
+		// ensure that the directory for the solved positions exists
+		new File(AppConfig.dirSolvedPos + nplys + "ply").mkdirs();
 		
-		// parse the positions to solve form the csv-file
-		log.info("start to parse the positions to solve form the csv-file");
-		try {
-			CSVFormat csvFileFormat = CSVFormat.DEFAULT.withHeader();
-			FileReader fileReader = new FileReader(positionFilePath);
-			CSVParser csvParser = new CSVParser(fileReader, csvFileFormat);
-			
-			List<CSVRecord> csvRecords = csvParser.getRecords();
-			if (endIndex < 0) {
-				endIndex = csvRecords.size();
+		log.fine("start to solve the positions, start-index: " + startIndex + ", end-index: " + endIndex + ", checkpoint: " + checkpoint + ", threads: " + threads);
+		if (SolverMetrics.enabled) {
+			metricsMonitor.register(nplys + "ply");
+			metricsMonitor.startLogging(metricsLogInterval);
+		}
+		
+		// the positions of each checkpoint are solved in a separate task, only a few checkpoints are read ahead
+		// in order to keep the memory usage independent of the number of positions
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		solutionWriter = new AsyncCsvWriter(writerCapacity, "solution-writer");
+		ArrayDeque<Checkpoint> pendingCheckpoints = new ArrayDeque<>();
+		int maxPending = threads + 1;
+		int skippedPositions = 0;
+		
+		try (NumericCsvReader reader = new NumericCsvReader(positionFilePath, "position", "disk_mask")) {
+			int index = 0;
+			Checkpoint current = null;
+			while ((endIndex < 0 || index < endIndex) && reader.next()) {
+				if (index++ < startIndex) {
+					continue;
+				}
+
+				if (current == null) {
+					current = new Checkpoint(index-1);
+				}
+				current.add(reader.get(0), reader.get(1));
+				
+				if (current.size() == checkpoint) {
+					skippedPositions += submitCheckpoint(pool, current, pendingCheckpoints);
+					current = null;
+				}
+				
+				// save the oldest checkpoint as soon as enough checkpoints are read ahead
+				if (pendingCheckpoints.size() > maxPending) {
+					saveCheckpoint(pendingCheckpoints.poll());
+				}
 			}
-			positions = new ObjectArrayList<>(endIndex-startIndex);
 			
-			for (int i=startIndex; i<endIndex; i++) {
-				CSVRecord csvPosition = csvRecords.get(i);
-				long position = Long.parseLong(csvPosition.get("position"));
-				long diskMask = Long.parseLong(csvPosition.get("disk_mask"));
-				Position p = new Position(position, diskMask);
-				positions.add(p);
+			if (current != null) {
+				skippedPositions += submitCheckpoint(pool, current, pendingCheckpoints);
 			}
 			
-			
-			csvParser.close();
-			fileReader.close();
-			
 		} catch (Exception e) {
-			log.severe("error parsing csv-file: ", e);
+			log.severe("stop reading the positions: ", e);
 		}
-
-
-		// solve all configured positions
-		log.fine("start to solve the positions, start-index: " + startIndex + ", end-index: " + endIndex + ", checkpoint: " + checkpoint);
-		List<Solution> solutions = new ObjectArrayList<>(endIndex-startIndex);
-		for (int i=0; i<endIndex-startIndex; i++) {
-			Position position = positions.get(i);
-			int score = solver.findBestScore(positions.get(i));
-			Solution solution = new Solution(position.getPosition(), position.getDiskMask(), score);
-			solutions.add(solution);
-
-			// save the solutions to a csv-file at the configured checkpoint interval or when the end
-			// index is reached
-			if ((i+1) % checkpoint == 0 || i==endIndex-startIndex-1) {
-				log.fine("positions solved so far: " + (i+1));
-
-				String fileStartIndex = Conversion.padLeft((i+startIndex-checkpoint+1) + "", '0', 7);
-				String fileEndIndex = Conversion.padLeft((i+startIndex+1) + "", '0', 7);
-				if (i==endIndex-startIndex-1) {
-					int start = (i+startIndex+1) - ((i+startIndex-checkpoint+1) % checkpoint);
-					fileStartIndex = Conversion.padLeft(start + "", '0', 7);
-				}
-				
-				String filePath = AppConfig.dirSolvedPos + nplys + "ply" + File.separator + fileStartIndex + "_" + fileEndIndex + ".csv";
-				solutuionsToCsv(filePath, solutions);
-				solutions.clear();
+		
+		// save the solutions of all remaining checkpoints and wait until they are written, the solving is stopped
+		// as soon as the solutions cannot be saved anymore
+		try {
+			while (!pendingCheckpoints.isEmpty()) {
+				saveCheckpoint(pendingCheckpoints.poll());
 			}
+		} catch (IOException e) {
+			log.severe("the solutions cannot be saved, stop solving the positions: ", e);
+			pool.shutdownNow();
+		}
+		try {
+			solutionWriter.close();
+		} catch (IOException e) {
+			log.severe("error saving the solutions: ", e);
 		}
+		
+		// all positions are solved, the tables of all workers can be saved
+		if (tpSnapshots) {
+			for (SolveWorker worker : allWorkers) {
+				worker.saveSnapshot();
+			}
+		}
+		
+		pool.shutdown();
+		log.fine("finished solving the positions, skipped already solved positions: " + skippedPositions);
+		
+		if (SolverMetrics.enabled) {
+			log.info("solver metrics: " + metricsMonitor.snapshot());
+			metricsMonitor.stop();
+		}
+	}
+	
+	
+	/**
+	 * starts to solve the positions of the passed checkpoint if they are not yet solved
+	 * @param pool					pool that solves the positions
+	 * @param checkpoint			the checkpoint to solve
+	 * @param pendingCheckpoints	queue to which the checkpoint is added if it needs to be solved
+	 * @return						the number of skipped positions if the checkpoint was already solved
+	 */
+	private int submitCheckpoint(ForkJoinPool pool, Checkpoint checkpoint, ArrayDeque<Checkpoint> pendingCheckpoints) {
+		if (new File(checkpoint.filePath()).exists()) {
+			log.fine("skip the already solved positions in " + checkpoint.filePath());
+			return checkpoint.size();
+		}
+		
+		checkpoint.task = pool.submit(new SolveTask(checkpoint, 0, checkpoint.size()));
+		pendingCheckpoints.add(checkpoint);
+		return 0;
+	}
+	
+	
+	/**
+	 * waits until all positions of the checkpoint are solved and saves them to the csv-file of the checkpoint
+	 * @param checkpoint	the checkpoint to save
+	 * @throws IOException	if the writer thread failed
+	 */
+	private void saveCheckpoint(Checkpoint checkpoint) throws IOException {
+		checkpoint.task.join();
+		log.fine("positions solved so far: " + checkpoint.end());
+		solutionsToCsv(checkpoint);
+		snapshotRequest++; 		// only this thread changes the request
 	}
 
 
 	/**
-	 * saves the passed connect4 solutions to a csv-file
-	 * @param filePath		path of the csv-file to which the solutions are saved
-	 * @param solutions		the connect4 solution
+	 * passes the solutions of the checkpoint to the writer thread, which saves them to the csv-file of the
+	 * checkpoint. the csv-file is only created after all solutions are on the disk, it either contains all
+	 * solutions of the checkpoint or it does not exist
+	 * @param checkpoint	the checkpoint with the solved positions
+	 * @throws IOException	if the writer thread failed
 	 */
-	private void solutuionsToCsv(String filePath, List<Solution> solutions) {
-		try {			
-			// add the header line
-			BufferedWriter writer = new BufferedWriter(new FileWriter(filePath));
-			CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("position", "disk_mask", "score"));
-			csvPrinter.flush();
+	private void solutionsToCsv(Checkpoint checkpoint) throws IOException {
+		solutionWriter.open(checkpoint.filePath(), "position", "disk_mask", "score");
+		for (int i=0; i<checkpoint.size(); i++) {
+			solutionWriter.printRecord(
+					checkpoint.positions.getLong(i),
+					checkpoint.diskMasks.getLong(i),
+					checkpoint.scores.getInt(i));
+		}
+		solutionWriter.finish();
+	}
+
 
-			// go through all solved positions and add them to the csv-file
-			for (Solution solution : solutions) {
-				csvPrinter.printRecord(
-						solution.position,
-						solution.diskMask,
-						solution.score);
+	private class SolveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private Checkpoint checkpoint;
+		private int start;
+		private int end;
 
-				// write the line to the file
-				csvPrinter.flush();
+		/**
+		 * solves the positions between the start (included) and the end index (not included), the task is
+		 * split until only one position is left, this way idle threads can steal the work of threads that
+		 * are busy with a hard position
+		 * @param checkpoint	checkpoint that holds the positions, the solutions are written to it
+		 * @param start			start index of the positions to solve
+		 * @param end			end index (not included) of the positions to solve
+		 */
+		private SolveTask(Checkpoint checkpoint, int start, int end) {
+			this.checkpoint = checkpoint;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > 1) {
+				int middle = (start + end) >>> 1;
+				invokeAll(new SolveTask(checkpoint, start, middle), new SolveTask(checkpoint, middle, end));
+				return;
 			}
 
-			csvPrinter.close();
-			log.info("solutions successfully saved to: " + filePath);
+			Position position = new Position(checkpoint.positions.getLong(start), checkpoint.diskMasks.getLong(start));
+			SolveWorker worker = workers.get();
+			int score = worker.solver.findBestScore(position);
+			checkpoint.scores.set(start, score);
+			
+			// the table can only be saved by the worker thread itself while its solver does not search
+			int request = snapshotRequest;
+			if (tpSnapshots && worker.savedRequest != request) {
+				worker.savedRequest = request;
+				worker.saveSnapshot();
+			}
+		}
+	}
 
-		} catch (Exception e) {
-			log.severe("error saving solutions to: " + filePath, e);
+
+	private class SolveWorker {
+		private Connect4Solver solver; 					// the solver of the worker thread
+		private String snapshotPath; 					// path of the snapshot of the transposition table
+		private int savedRequest; 						// the last snapshot request for which the table was saved
+
+		/**
+		 * holds the solver of a worker thread. if the snapshots are enabled the transposition table of the
+		 * worker with the same index of an earlier run is loaded
+		 * @param index					index of the worker
+		 * @param nplyTranspositions	nply transposition table that should be used by the solver
+		 */
+		public SolveWorker(int index, int nplyTranspositions) {
+			solver = new Connect4Solver(true, nplyTranspositions);
+			snapshotPath = AppConfig.dirTpSnapshots + nplys + "ply_worker" + index + ".tt";
+			if (tpSnapshots && new File(snapshotPath).exists()) {
+				try {
+					solver.loadTranspositionTable(snapshotPath);
+					log.fine("transposition table loaded from " + snapshotPath);
+				} catch (IOException e) {
+					log.warning("start with an empty transposition table, the snapshot cannot be loaded: " + e.getMessage());
+				}
+			}
+		}
+		
+		
+		/**
+		 * saves the transposition table of the solver, the solver must not search at the same time
+		 */
+		public void saveSnapshot() {
+			try {
+				new File(AppConfig.dirTpSnapshots).mkdirs();
+				solver.saveTranspositionTable(snapshotPath);
+				log.fine("transposition table saved to " + snapshotPath);
+			} catch (IOException e) {
+				log.severe("error saving the transposition table to " + snapshotPath, e);
+			}
 		}
 	}
 
 
-	private class Solution {
-		private long position;
-		private long diskMask;
-		private int score;
+	private class Checkpoint {
+		private int start; 								// index of the first position in the position file
+		private LongArrayList positions; 				// the positions of the current player
+		private LongArrayList diskMasks; 				// the disk masks with all disks
+		private IntArrayList scores; 					// the scores of the solved positions
+		private ForkJoinTask<Void> task; 				// the task that solves the positions
 
 		/**
-		 * holds the values of a solved position
+		 * holds the positions that are saved to the same csv-file
+		 * @param start		index of the first position in the position file
+		 */
+		public Checkpoint(int start) {
+			this.start = start;
+			positions = new LongArrayList();
+			diskMasks = new LongArrayList();
+			scores = new IntArrayList();
+		}
+		
+		
+		/**
+		 * adds a position to solve
 		 * @param position	the position of the current player
 		 * @param diskMask	the disk mask with all disks
-		 * @param score		the score of the position
 		 */
-		public Solution(long position, long diskMask, int score) {
-			super();
-			this.position = position;
-			this.diskMask = diskMask;
-			this.score = score;
+		public void add(long position, long diskMask) {
+			positions.add(position);
+			diskMasks.add(diskMask);
+			scores.add(0);
+		}
+		
+		
+		public int size() {
+			return positions.size();
+		}
+		
+		
+		/**
+		 * @return	the index after the last position in the position file
+		 */
+		public int end() {
+			return start + size();
+		}
+		
+		
+		/**
+		 * @return	path of the csv-file to which the solutions of the checkpoint are saved
+		 */
+		public String filePath() {
+			String fileStartIndex = Conversion.padLeft(start + "", '0', 7);
+			String fileEndIndex = Conversion.padLeft(end() + "", '0', 7);
+			return AppConfig.dirSolvedPos + nplys + "ply" + File.separator + fileStartIndex + "_" + fileEndIndex + ".csv";
 		}
 	}
 }
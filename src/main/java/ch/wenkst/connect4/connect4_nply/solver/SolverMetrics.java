@@ -0,0 +1,135 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+import java.util.Arrays;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+
+/**
+ * counters of the search of the solver. the counters are only updated if the metrics are enabled in the
+ * configuration file, otherwise the jit compiler removes the counting code from the search
+ */
+public class SolverMetrics implements SolverMetricsMXBean {
+	public static final boolean enabled = AppConfig.getInstance().getConfigValue("metrics", false);
+
+	long solves; 								// number of solved positions
+	long nodes; 								// number of visited nodes
+	long tpProbes; 								// number of transposition table look ups
+	long tpHits; 								// number of look ups that found an upper bound
+	long tpOverwrites; 							// number of entries of other positions that were overwritten
+	long bookHits; 								// number of positions found in the nply book
+	long etcCutoffs; 							// number of positions refuted by the cached bound of a child
+	long storeHits; 							// number of solved positions found in the solved position store
+	long nullWindowSearches; 					// number of null window searches in the iterative deepening
+	long[] cutoffs = new long[AppConfig.boardWidth]; 	// beta cutoffs by the index of the explored move
+	long solveTimeNanos; 						// time needed to solve the positions
+
+
+	/**
+	 * sets all counters to 0
+	 */
+	public void reset() {
+		solves = 0;
+		nodes = 0;
+		tpProbes = 0;
+		tpHits = 0;
+		tpOverwrites = 0;
+		bookHits = 0;
+		etcCutoffs = 0;
+		storeHits = 0;
+		nullWindowSearches = 0;
+		Arrays.fill(cutoffs, 0);
+		solveTimeNanos = 0;
+	}
+
+
+	/**
+	 * adds the counters of the passed metrics to the counters of this metrics
+	 * @param other 	metrics to add
+	 */
+	public void add(SolverMetrics other) {
+		solves += other.solves;
+		nodes += other.nodes;
+		tpProbes += other.tpProbes;
+		tpHits += other.tpHits;
+		tpOverwrites += other.tpOverwrites;
+		bookHits += other.bookHits;
+		etcCutoffs += other.etcCutoffs;
+		storeHits += other.storeHits;
+		nullWindowSearches += other.nullWindowSearches;
+		for (int i=0; i<cutoffs.length; i++) {
+			cutoffs[i] += other.cutoffs[i];
+		}
+		solveTimeNanos += other.solveTimeNanos;
+	}
+
+
+	@Override
+	public String toString() {
+		double hitRate = tpProbes == 0 ? 0 : 100.0 * tpHits / tpProbes;
+		return "solves: " + solves + ", nodes: " + nodes + ", nodes/s: " + String.format("%.0f", getNodesPerSecond()) +
+				", tp probes: " + tpProbes + ", tp hits: " + tpHits + " (" + String.format("%.1f", hitRate) + "%)" +
+				", tp overwrites: " + tpOverwrites + ", book hits: " + bookHits + ", etc cutoffs: " + etcCutoffs + ", store hits: " + storeHits + ", null window searches: " + nullWindowSearches +
+				", cutoffs by move: " + Arrays.toString(cutoffs);
+	}
+
+
+	@Override
+	public long getSolves() {
+		return solves;
+	}
+
+	@Override
+	public long getNodes() {
+		return nodes;
+	}
+
+	@Override
+	public long getTpProbes() {
+		return tpProbes;
+	}
+
+	@Override
+	public long getTpHits() {
+		return tpHits;
+	}
+
+	@Override
+	public long getTpOverwrites() {
+		return tpOverwrites;
+	}
+
+	@Override
+	public long getBookHits() {
+		return bookHits;
+	}
+
+	@Override
+	public long getEtcCutoffs() {
+		return etcCutoffs;
+	}
+
+	@Override
+	public long getStoreHits() {
+		return storeHits;
+	}
+
+	@Override
+	public long getNullWindowSearches() {
+		return nullWindowSearches;
+	}
+
+	@Override
+	public long[] getCutoffs() {
+		return cutoffs.clone();
+	}
+
+	@Override
+	public long getSolveTimeNanos() {
+		return solveTimeNanos;
+	}
+
+	@Override
+	public double getNodesPerSecond() {
+		return solveTimeNanos == 0 ? 0 : nodes * 1e9 / solveTimeNanos;
+	}
+}
@@ -0,0 +1,19 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+/**
+ * counters of the solver that can be read over jmx
+ */
+public interface SolverMetricsMXBean {
+	public long getSolves();
+	public long getNodes();
+	public long getTpProbes();
+	public long getTpHits();
+	public long getTpOverwrites();
+	public long getBookHits();
+	public long getEtcCutoffs();
+	public long getStoreHits();
+	public long getNullWindowSearches();
+	public long[] getCutoffs();
+	public long getSolveTimeNanos();
+	public double getNodesPerSecond();
+}
@@ -0,0 +1,162 @@
+package ch.wenkst.connect4.connect4_nply.solver;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import ch.wenkst.sw_utils.logging.Log;
+
+public class SolverMetricsMonitor implements SolverMetricsMXBean {
+	private static Log log = Log.getLogger(SolverMetricsMonitor.class);
+
+	private List<Connect4Solver> solvers; 			// the solvers whose counters are summed up
+	private ScheduledExecutorService scheduler; 	// logs the counters periodically
+	private ObjectName objectName; 					// name of the jmx bean
+
+
+
+	/**
+	 * sums up the counters of many solvers, the sum can be read over jmx or is written to the log periodically.
+	 * the counters are updated by the solver threads without any synchronization, the sum is therefore
+	 * only approximate while the solvers are running
+	 */
+	public SolverMetricsMonitor() {
+		solvers = new CopyOnWriteArrayList<>();
+	}
+
+
+	/**
+	 * adds a solver to the monitor
+	 * @param solver 	connect4 solver
+	 */
+	public void addSolver(Connect4Solver solver) {
+		solvers.add(solver);
+	}
+
+
+	/**
+	 * returns the sum of the counters of all solvers
+	 * @return
+	 */
+	public SolverMetrics snapshot() {
+		SolverMetrics total = new SolverMetrics();
+		for (Connect4Solver solver : solvers) {
+			total.add(solver.getTotalMetrics());
+		}
+		return total;
+	}
+
+
+	/**
+	 * registers the monitor as jmx bean
+	 * @param name 		name of the bean
+	 */
+	public void register(String name) {
+		try {
+			objectName = new ObjectName("ch.wenkst.connect4:type=SolverMetrics,name=" + name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+		} catch (Exception e) {
+			log.warning("failed to register the solver metrics as jmx bean: " + e.getMessage());
+			objectName = null;
+		}
+	}
+
+
+	/**
+	 * writes the counters to the log at the passed interval
+	 * @param intervalSeconds 		interval in seconds
+	 */
+	public void startLogging(int intervalSeconds) {
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "solver-metrics");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(() -> log.info("solver metrics: " + snapshot()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+
+	/**
+	 * stops the logging and unregisters the jmx bean
+	 */
+	public void stop() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				log.warning("failed to unregister the solver metrics: " + e.getMessage());
+			}
+		}
+	}
+
+
+	@Override
+	public long getSolves() {
+		return snapshot().getSolves();
+	}
+
+	@Override
+	public long getNodes() {
+		return snapshot().getNodes();
+	}
+
+	@Override
+	public long getTpProbes() {
+		return snapshot().getTpProbes();
+	}
+
+	@Override
+	public long getTpHits() {
+		return snapshot().getTpHits();
+	}
+
+	@Override
+	public long getTpOverwrites() {
+		return snapshot().getTpOverwrites();
+	}
+
+	@Override
+	public long getBookHits() {
+		return snapshot().getBookHits();
+	}
+
+	@Override
+	public long getEtcCutoffs() {
+		return snapshot().getEtcCutoffs();
+	}
+
+	@Override
+	public long getStoreHits() {
+		return snapshot().getStoreHits();
+	}
+
+	@Override
+	public long getNullWindowSearches() {
+		return snapshot().getNullWindowSearches();
+	}
+
+	@Override
+	public long[] getCutoffs() {
+		return snapshot().getCutoffs();
+	}
+
+	@Override
+	public long getSolveTimeNanos() {
+		return snapshot().getSolveTimeNanos();
+	}
+
+	@Override
+	public double getNodesPerSecond() {
+		return snapshot().getNodesPerSecond();
+	}
+}
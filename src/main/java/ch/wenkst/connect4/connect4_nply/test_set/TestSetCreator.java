@@ -1,8 +1,7 @@
 package ch.wenkst.connect4.connect4_nply.test_set;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -11,14 +10,11 @@ import java.util.Random;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-
 import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
 import ch.wenkst.connect4.connect4_nply.game.Position;
 import ch.wenkst.connect4.connect4_nply.game.SolvedPosition;
-import ch.wenkst.connect4.connect4_nply.solver.Connect4Solver;
-import ch.wenkst.sw_utils.file.FileUtils;
+import ch.wenkst.connect4.connect4_nply.io.AsyncCsvWriter;
+import ch.wenkst.connect4.connect4_nply.solver.ParallelSolver;
 import ch.wenkst.sw_utils.logging.Log;
 
 public class TestSetCreator {
@@ -29,11 +25,13 @@ public class TestSetCreator {
 	private int nPositions3; 			// number of positions with only 3 moves played
 	private int nPositions4_8; 			// number of positions with 4-8 moves
 	private int nPositions9_40; 		// number of positions with 9-40 moves
-	private Connect4Solver solver; 		// the solver that solves the positions
+	private ParallelSolver solver; 		// the solver that solves the positions
+	private boolean tpSnapshots; 		// true if the transposition table is saved to warm start the next run
+	private String snapshotPath = AppConfig.dirTpSnapshots + "test_set.tt"; 	// snapshot of the transposition table of the solver
+	private static final int writerCapacity = 1024; 		// number of solutions that can wait for the writer thread
 	
 	
 	private List<Position> positions;				// holds the positions of the test set
-	private List<SolvedPosition> solvedPositions;	// holds all solved positions
 
 
 	
@@ -53,13 +51,48 @@ public class TestSetCreator {
 	
 		
 		positions = new ArrayList<>();			
-		solvedPositions = new ArrayList<>();	
 		
 		// create the number generator with the current time as seed
 		random = new Random(Instant.now().toEpochMilli());	
 		
-		// initialize the solver
-		solver = new Connect4Solver(true, 12);		// use a transposition table of 12 ply
+		// initialize the solver, the moves of a position are searched in parallel
+		int threads = AppConfig.getInstance().getConfigValue("threads", 1);
+		solver = new ParallelSolver(threads, true, 12);		// use a transposition table of 12 ply
+		tpSnapshots = AppConfig.getInstance().getConfigValue("tpSnapshots", false);
+		if (tpSnapshots) {
+			loadSnapshot();
+		}
+	}
+	
+	
+	/**
+	 * loads the transposition table of an earlier run so that the solver starts with the bounds found by this run
+	 */
+	private void loadSnapshot() {
+		if (!new File(snapshotPath).exists()) {
+			return;
+		}
+		
+		try {
+			solver.loadTranspositionTable(snapshotPath);
+			log.info("transposition table loaded from " + snapshotPath);
+		} catch (IOException e) {
+			log.warning("start with an empty transposition table, the snapshot cannot be loaded: " + e.getMessage());
+		}
+	}
+	
+	
+	/**
+	 * saves the transposition table of the solver for the next run
+	 */
+	private void saveSnapshot() {
+		try {
+			new File(AppConfig.dirTpSnapshots).mkdirs();
+			solver.saveTranspositionTable(snapshotPath);
+			log.info("transposition table saved to " + snapshotPath);
+		} catch (IOException e) {
+			log.severe("error saving the transposition table to " + snapshotPath, e);
+		}
 	}
 	
 	
@@ -74,46 +107,26 @@ public class TestSetCreator {
 
 	
 	/**
-	 * solves the position that are not solved yet
+	 * solves the positions and writes the test set to a csv-file. every solution is passed to a writer thread as
+	 * soon as it is solved, the solver does not wait for the disk. the csv-file is only replaced after all positions
+	 * are solved, the solver stops as soon as the writer fails
+	 * @param csvFilePath	the csv file path
 	 */
-	public void solvePositions() {
+	public void solvePositions(String csvFilePath) {
 		log.fine("start to solve positions");
 		
-		for (Position position : positions) {
-			// solve the position
-			SolvedPosition solution = solver.findOptimalMoves(position);
-			solvedPositions.add(solution);
-			
-			double completion = solvedPositions.size() / (double) positions.size();
-			log.fine("solved position " + position.getMoveCount() + " ply, completion: " + String.format("%.2f", completion*100) + "%");
-		}
-	}
-	
-	
-	/**
-	 * writes the test set to a csv-file
-	 * @param csvFilePath	the csv file path
-	 */
-	public void toCsv(String csvFilePath) {		
+		// ensure that the directory exists
+		new File(AppConfig.dirTestSet).mkdirs();
+		AsyncCsvWriter csvWriter = new AsyncCsvWriter(writerCapacity, "test-set-writer");
 		try {
-			// ensure that the directory exists
-			new File(AppConfig.dirTestSet).mkdirs();
-			
-			// delete the old file
-			File csvFile = new File(csvFilePath);
-			if (csvFile.exists()) {
-				FileUtils.deleteFile(csvFilePath);
-				log.info("old csv-file successfully deleted");
-			}
-			
-			// add the header line
-			BufferedWriter writer = new BufferedWriter(new FileWriter(csvFilePath));
-			CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader("position", "disk_mask", "strong_score", "weak_score", "strong_moves", "weak_moves"));
-			csvPrinter.flush();
+			csvWriter.open(csvFilePath, "position", "disk_mask", "strong_score", "weak_score", "strong_moves", "weak_moves");
 			
-			// go through all solved positions and add them to the csv-file
-			for (SolvedPosition solution : solvedPositions) {
-				csvPrinter.printRecord(
+			int solvedCount = 0;
+			for (Position position : positions) {
+				// solve the position
+				SolvedPosition solution = solver.findOptimalMoves(position);
+				solvedCount++;
+				csvWriter.printRecord(
 						solution.getPosition().getPosition(),
 						solution.getPosition().getDiskMask(),
 						solution.getStrongScore(),
@@ -121,17 +134,24 @@ public class TestSetCreator {
 						solution.getStrongMovesStr(),
 						solution.getWeakMovesStr());
 				
-				// write the line to the file
-				csvPrinter.flush();
-				
+				double completion = solvedCount / (double) positions.size();
+				log.fine("solved position " + position.getMoveCount() + " ply, completion: " + String.format("%.2f", completion*100) + "%");
 			}
-
-			csvPrinter.close();
-			log.info("test-set successfully written to csv-file: " + csvFilePath);
 			
-		} catch (Exception e) {
+		} catch (IOException e) {
+			log.severe("the test set cannot be written, stop solving the positions: ", e);
+		}
+		
+		try {
+			csvWriter.close();
+			log.info("test-set successfully written to csv-file: " + csvFilePath);
+		} catch (IOException e) {
 			log.severe("error writing the test set to a csv-file: ", e);
 		}
+		
+		if (tpSnapshots) {
+			saveSnapshot();
+		}
 	}
 	
 	
@@ -0,0 +1,149 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.io.AsyncCsvWriter;
+
+public class AsyncCsvWriterTest {
+	private static final Duration timeout = Duration.ofSeconds(30); 	// the producers must never hang
+
+
+	/**
+	 * the records of several files are written in the order of the producer, the temporary files are renamed
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		File dir = Files.createTempDirectory("connect4_writer").toFile();
+		try {
+			File first = new File(dir, "first.csv");
+			File second = new File(dir, "second.csv");
+			assertTimeoutPreemptively(timeout, () -> {
+				try (AsyncCsvWriter writer = new AsyncCsvWriter(16, "test-writer")) {
+					// more records than a batch
+					writer.open(first.getPath(), "position", "disk_mask", "score");
+					for (int i=0; i<10000; i++) {
+						writer.printRecord(i, 2L * i, i % 37 - 18);
+					}
+					writer.finish();
+
+					writer.open(second.getPath(), "position", "score");
+					writer.printRecord(7, -3);
+				}
+			});
+
+			List<String> expected = new ArrayList<>();
+			expected.add("position,disk_mask,score");
+			for (int i=0; i<10000; i++) {
+				expected.add(i + "," + (2L * i) + "," + (i % 37 - 18));
+			}
+			assertEquals(expected, Files.readAllLines(first.toPath(), StandardCharsets.UTF_8), "records of the first file");
+			assertEquals(List.of("position,score", "7,-3"), Files.readAllLines(second.toPath(), StandardCharsets.UTF_8), "records of the second file");
+			assertEquals(2, dir.listFiles().length, "no temporary file is left");
+
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+
+	/**
+	 * a file that cannot be created fails the producers and the close instead of blocking them, even if the
+	 * queue only has space for one element
+	 */
+	@Test
+	public void unwritablePath() throws IOException {
+		File dir = Files.createTempDirectory("connect4_writer").toFile();
+		try {
+			String filePath = new File(dir, "missing" + File.separator + "positions.csv").getPath();
+			assertTimeoutPreemptively(timeout, () -> {
+				AsyncCsvWriter writer = new AsyncCsvWriter(1, "test-writer");
+				writer.open(filePath, "position", "score");
+				assertThrows(IOException.class, () -> {
+					for (int i=0; i<1000000; i++) {
+						writer.printRecord(i, 0);
+					}
+				}, "producer fails");
+				assertThrows(IOException.class, () -> writer.close(), "close reports the error");
+			});
+			assertEquals(0, dir.listFiles().length, "no file is created");
+
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+
+	/**
+	 * a file that fails while its records are written is deleted, the files that are opened afterwards are
+	 * still written
+	 */
+	@Test
+	public void failedFileIsDeleted() throws IOException {
+		File dir = Files.createTempDirectory("connect4_writer").toFile();
+		try {
+			File failedFile = new File(dir, "failed.csv");
+			File nextFile = new File(dir, "next.csv");
+			CountDownLatch queued = new CountDownLatch(1);
+			Object badValue = new Object() {
+				@Override
+				public String toString() {
+					// fail only after the producer queued the next file
+					try {
+						queued.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					throw new IllegalStateException("value cannot be written");
+				}
+			};
+
+			assertTimeoutPreemptively(timeout, () -> {
+				AsyncCsvWriter writer = new AsyncCsvWriter(16, "test-writer");
+				writer.open(failedFile.getPath(), "position", "score");
+				writer.printRecord(1, 2);
+				writer.printRecord(3, badValue);
+				writer.printRecord(5, 6);
+				writer.open(nextFile.getPath(), "position", "score");
+				writer.printRecord(7, 8);
+				queued.countDown();
+				assertThrows(IOException.class, () -> writer.close(), "close reports the error of the failed file");
+			});
+
+			assertFalse(failedFile.exists(), "failed file is not renamed");
+			assertFalse(new File(failedFile.getPath() + ".tmp").exists(), "temporary file of the failed file is deleted");
+			assertTrue(nextFile.exists(), "next file is written");
+			assertEquals(List.of("position,score", "7,8"), Files.readAllLines(nextFile.toPath(), StandardCharsets.UTF_8), "records of the next file");
+			assertEquals(1, dir.listFiles().length, "only the next file is left");
+
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+
+	/**
+	 * deletes the files of a directory and the directory
+	 * @param dir		the directory
+	 */
+	private void deleteDir(File dir) {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+}
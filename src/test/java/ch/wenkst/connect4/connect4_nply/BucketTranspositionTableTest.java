@@ -0,0 +1,117 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.BucketTranspositionTable;
+
+public class BucketTranspositionTableTest {
+	private static final int size = 1 << 16; 		// smallest table, it has 2^14 buckets with 4 entries
+	private static final int bucketBits = 14;
+	private static final int keyBits = AppConfig.boardSize + AppConfig.boardWidth;
+
+
+	/**
+	 * the upper bound, the lower bound and the move of a position are updated independently
+	 */
+	@Test
+	public void updateBounds() {
+		BucketTranspositionTable table = new BucketTranspositionTable(size);
+		long key = 123456789;
+		assertFalse(table.put(key, (byte) 10, 3, 3), "empty entry");
+		assertFalse(table.putLower(key, (byte) 5, 1, -1), "same position");
+		assertEquals(10, table.get(key), "upper bound");
+		assertEquals(5, table.getLower(key), "lower bound");
+		assertEquals(3, table.getMove(key), "move is kept");
+
+		table.put(key, (byte) 63, 2, 6);
+		assertEquals(63, table.get(key), "updated upper bound");
+		assertEquals(5, table.getLower(key), "lower bound stays valid");
+		assertEquals(6, table.getMove(key), "updated move");
+		assertEquals(0, table.get(key + 1), "position that is not part of the table");
+	}
+
+
+	/**
+	 * bounds that are not larger than 0 are not saved and do not change the other entries of the bucket
+	 */
+	@Test
+	public void nonPositiveBounds() {
+		BucketTranspositionTable table = new BucketTranspositionTable(size);
+		long[] keys = sameBucketKeys(3);
+		table.put(keys[0], (byte) 20, 4, 2);
+
+		assertFalse(table.put(keys[1], (byte) 0, 4, 1), "bound of 0 is not saved");
+		assertFalse(table.put(keys[1], (byte) -1, 4, 1), "negative bound is not saved");
+		assertFalse(table.putLower(keys[0], (byte) -3, 4, 1), "negative lower bound is not saved");
+		assertEquals(0, table.get(keys[1]), "no upper bound");
+		assertEquals(-1, table.getMove(keys[1]), "no move");
+		assertEquals(20, table.get(keys[0]), "other entry is unchanged");
+		assertEquals(0, table.getLower(keys[0]), "no lower bound");
+		assertEquals(2, table.getMove(keys[0]), "move is unchanged");
+
+		// the bucket is still filled from the start
+		table.put(keys[2], (byte) 7, 4, 0);
+		assertEquals(7, table.get(keys[2]), "entry after the first entry");
+	}
+
+
+	/**
+	 * a full bucket replaces the entry that needed the least work, entries of older generations are replaced
+	 * before the entries of the current generation
+	 */
+	@Test
+	public void replacement() {
+		BucketTranspositionTable table = new BucketTranspositionTable(size);
+		long[] keys = sameBucketKeys(6);
+		int[] work = {5, 2, 7, 4};
+		for (int i=0; i<work.length; i++) {
+			assertFalse(table.put(keys[i], (byte) (i + 1), work[i], i), "bucket is not full");
+		}
+
+		assertTrue(table.put(keys[4], (byte) 30, 6, 0), "full bucket");
+		assertEquals(0, table.get(keys[1]), "entry with the least work is replaced");
+		assertEquals(1, table.get(keys[0]), "entry is kept");
+		assertEquals(3, table.get(keys[2]), "entry is kept");
+		assertEquals(4, table.get(keys[3]), "entry is kept");
+		assertEquals(30, table.get(keys[4]), "new entry");
+
+		// only the entry with work 4 is part of the new generation
+		table.nextGeneration();
+		table.put(keys[3], (byte) 4, 4, 3);
+		assertTrue(table.put(keys[5], (byte) 40, 0, 0), "full bucket");
+		assertEquals(4, table.get(keys[3]), "entry of the current generation is kept");
+		assertEquals(0, table.get(keys[0]), "old entry with the least work is replaced");
+		assertEquals(3, table.get(keys[2]), "entry is kept");
+		assertEquals(30, table.get(keys[4]), "entry is kept");
+		assertEquals(40, table.get(keys[5]), "new entry");
+	}
+
+
+	/**
+	 * returns keys that are saved in the same bucket of a table with 2^14 buckets, the bucket is defined by the
+	 * upper bits of the hash of the key
+	 * @param count		number of keys
+	 * @return
+	 */
+	private long[] sameBucketKeys(int count) {
+		long[] keys = new long[count];
+		long keyMask = (1L << keyBits) - 1;
+		long bucket = -1;
+		int found = 0;
+		for (long key=1; found<count; key++) {
+			long keyBucket = ((key * 0x9E3779B97F4A7C15L) & keyMask) >>> (keyBits - bucketBits);
+			if (bucket < 0) {
+				bucket = keyBucket;
+			}
+			if (keyBucket == bucket) {
+				keys[found++] = key;
+			}
+		}
+		return keys;
+	}
+}
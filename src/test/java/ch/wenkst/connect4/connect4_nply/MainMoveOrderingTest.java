@@ -0,0 +1,69 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import java.io.File;
+import java.util.List;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.position.TestPosition;
+import ch.wenkst.connect4.connect4_nply.position.TestPositionParser;
+import ch.wenkst.connect4.connect4_nply.solver.Connect4Solver;
+import ch.wenkst.connect4.connect4_nply.solver.MoveOrdering;
+import ch.wenkst.connect4.connect4_nply.solver.SolverMetrics;
+import ch.wenkst.sw_utils.Utils;
+import ch.wenkst.sw_utils.logging.Log;
+
+public class MainMoveOrderingTest {
+	static {
+		System.setProperty("config.file", "config/app.conf"); 					// application config file
+	}
+	
+	private static Log log = Log.getLogger(MainMoveOrderingTest.class);
+
+	public String testFilePath = Utils.getWorkDir() + File.separator + "test" + File.separator + "5_begin_medium.txt";
+	private int nplyTranspositions = 10; 								// nply book used by the solver
+
+
+	public static void main(String[] args) {
+		// initialize the logger
+		Log.initFromFile(AppConfig.dirLoggerConfig);
+		log.fine("Starting the move ordering comparison");
+		if (!SolverMetrics.enabled) {
+			log.warning("the metrics are disabled in config/app.conf, the number of nodes is not counted");
+		}
+
+		MainMoveOrderingTest app = new MainMoveOrderingTest();
+		for (MoveOrdering moveOrdering : MoveOrdering.values()) {
+			app.executeTest(moveOrdering);
+		}
+	}
+
+
+	/**
+	 * solves all test positions with a new solver that uses the passed move ordering and logs the solve
+	 * time, the number of explored nodes and the share of the cutoffs by the first move
+	 * @param moveOrdering		the move ordering heuristics of the solver
+	 */
+	private void executeTest(MoveOrdering moveOrdering) {
+		TestPositionParser parser = new TestPositionParser();
+		List<TestPosition> testPositionList = parser.positionsFromFile(testFilePath);
+		Connect4Solver solver = new Connect4Solver(true, nplyTranspositions);
+		solver.setMoveOrdering(moveOrdering);
+		
+		long startTime = System.nanoTime();
+		for (TestPosition testPosition : testPositionList) {
+			int score = solver.findBestScore(testPosition.toPosition());
+			if (score != testPosition.getScore()) {
+				log.severe("error in solver!! calculated score: " + score + ", true score: " + testPosition.getScore());
+			}
+		}
+		long elapsed = System.nanoTime() - startTime;
+		
+		SolverMetrics metrics = solver.getTotalMetrics();
+		long cutoffs = 0;
+		for (long moveCutoffs : metrics.getCutoffs()) {
+			cutoffs += moveCutoffs;
+		}
+		double firstMoveCutoffs = 100D * metrics.getCutoffs()[0] / Math.max(1, cutoffs);
+		log.info(moveOrdering + ": time " + elapsed / 1000000 + "ms, nodes " + metrics.getNodes() + ", first move cutoffs " + String.format("%.1f", firstMoveCutoffs) + "%");
+	}
+}
@@ -1,8 +1,11 @@
 package ch.wenkst.connect4.connect4_nply;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 
+import com.sun.management.ThreadMXBean;
+
 import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
 import ch.wenkst.connect4.connect4_nply.game.Position;
 import ch.wenkst.connect4.connect4_nply.position.TestPosition;
@@ -51,15 +54,20 @@ public class MainSolverSpeedTest {
 		// put them to the connect4 solver
 		log.info("start to solve the test positions");
 		Connect4Solver solver = new Connect4Solver(); 
+		ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
 		long totTime = 0;
+		long totAllocated = 0;
 		for (TestPosition testPosition : testPositionList) {
 			Position position = testPosition.toPosition();
 			
+			long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
 			long startTime = System.nanoTime();
 			int score = solver.findBestScore(position);
 			long endTime = System.nanoTime();
 			long timeDiff = endTime - startTime;
 			totTime += timeDiff;
+			totAllocated += threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
 			
 			// log wrong scores for strong solvers
 			if (score != testPosition.getScore()) {
@@ -73,5 +81,8 @@ public class MainSolverSpeedTest {
 		// calculate the mean time in ms and the number of explored positions
 		double meanTime = (double) totTime / testPositionList.size() / 1000000D;
 		log.info(statusMessage + " mean time: " + meanTime + "ms");
+		
+		// the search itself should not allocate any memory
+		log.info("mean allocated memory per position: " + totAllocated / testPositionList.size() + " bytes");
 	}
 }
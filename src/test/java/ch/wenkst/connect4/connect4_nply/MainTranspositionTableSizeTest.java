@@ -0,0 +1,81 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.position.TestPosition;
+import ch.wenkst.connect4.connect4_nply.position.TestPositionParser;
+import ch.wenkst.connect4.connect4_nply.solver.Connect4Solver;
+import ch.wenkst.connect4.connect4_nply.solver.SolverMetrics;
+import ch.wenkst.sw_utils.Utils;
+import ch.wenkst.sw_utils.logging.Log;
+
+public class MainTranspositionTableSizeTest {
+	static {
+		System.setProperty("config.file", "config/app.conf"); 					// application config file
+	}
+	
+	private static Log log = Log.getLogger(MainTranspositionTableSizeTest.class);
+
+	public String testFilePath = Utils.getWorkDir() + File.separator + "test" + File.separator + "5_begin_medium.txt";
+	private int nplyTranspositions = 10; 								// nply book used by the solver
+	private int[] memoriesMb = {2, 8, 32, 128, 512}; 				// sizes of the transposition table to compare
+
+
+	public static void main(String[] args) {
+		// initialize the logger
+		Log.initFromFile(AppConfig.dirLoggerConfig);
+		log.fine("Starting the transposition table size sweep");
+		if (!SolverMetrics.enabled) {
+			log.warning("the metrics are disabled in config/app.conf, the number of nodes is not counted");
+		}
+
+		MainTranspositionTableSizeTest app = new MainTranspositionTableSizeTest();
+		for (int memoryMb : app.memoriesMb) {
+			app.executeTest(memoryMb);
+		}
+	}
+
+
+	/**
+	 * solves all test positions with a new solver that uses a transposition table of the passed size and
+	 * logs the solve time and the number of explored nodes. the direct memory of the jvm needs to be large
+	 * enough for the off-heap tables (-XX:MaxDirectMemorySize)
+	 * @param memoryMb		memory of the transposition table in Mb
+	 */
+	private void executeTest(int memoryMb) {
+		TestPositionParser parser = new TestPositionParser();
+		List<TestPosition> testPositionList = parser.positionsFromFile(testFilePath);
+		Connect4Solver solver = new Connect4Solver(true, nplyTranspositions, (long) memoryMb << 20);
+		
+		long gcTime = totalGcTime();
+		long startTime = System.nanoTime();
+		for (TestPosition testPosition : testPositionList) {
+			int score = solver.findBestScore(testPosition.toPosition());
+			if (score != testPosition.getScore()) {
+				log.severe("error in solver!! calculated score: " + score + ", true score: " + testPosition.getScore());
+			}
+		}
+		long elapsed = System.nanoTime() - startTime;
+		
+		SolverMetrics metrics = solver.getTotalMetrics();
+		log.info(memoryMb + "Mb: time " + elapsed / 1000000 + "ms, gc time " + (totalGcTime() - gcTime) + "ms, nodes " + metrics.getNodes() + 
+				", tp hits " + metrics.getTpHits() + ", tp overwrites " + metrics.getTpOverwrites());
+	}
+
+
+	/**
+	 * returns the accumulated time of all garbage collections in ms
+	 * @return
+	 */
+	private long totalGcTime() {
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(0, gcBean.getCollectionTime());
+		}
+		return gcTime;
+	}
+}
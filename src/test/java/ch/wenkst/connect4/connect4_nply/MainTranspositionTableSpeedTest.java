@@ -0,0 +1,124 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.ArrayTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.HashMapTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.game.TranspositionTable;
+import ch.wenkst.connect4.connect4_nply.position.TestPosition;
+import ch.wenkst.connect4.connect4_nply.position.TestPositionParser;
+import ch.wenkst.connect4.connect4_nply.solver.Connect4Solver;
+import ch.wenkst.sw_utils.Utils;
+import ch.wenkst.sw_utils.logging.Log;
+
+public class MainTranspositionTableSpeedTest {
+	private static Log log = Log.getLogger(MainTranspositionTableSpeedTest.class);
+
+	public String testFilePath = Utils.getWorkDir() + File.separator + "test" + File.separator + "5_begin_medium.txt";
+	private int operations = 20000000; 		// number of put and get operations for the throughput test
+
+
+	public static void main(String[] args) {
+		// initialize the logger
+		Log.initFromFile(AppConfig.dirLoggerConfig);
+		log.fine("Starting the transposition table comparison");
+
+		MainTranspositionTableSpeedTest app = new MainTranspositionTableSpeedTest();
+		app.executeTest("hash map table", () -> new HashMapTranspositionTable(AppConfig.tpTableSize));
+		app.executeTest("array table", () -> new ArrayTranspositionTable(AppConfig.tpTableSize));
+	}
+
+
+	/**
+	 * measures the memory usage and the throughput of the transposition table created by the passed supplier
+	 * @param name 			name of the table used for the log
+	 * @param tableSupplier	creates the transposition table to test
+	 */
+	private void executeTest(String name, Supplier<TranspositionTable> tableSupplier) {
+		// memory of the completely filled table
+		long memoryBefore = usedMemory();
+		TranspositionTable tpTable = tableSupplier.get();
+		Random random = new Random(42);
+		for (int i=0; i<AppConfig.tpTableSize; i++) {
+			tpTable.put(randomKey(random), (byte) 1);
+		}
+		long memoryAfter = usedMemory();
+		log.info(name + ": memory of the filled table " + (memoryAfter - memoryBefore) / (1024*1024) + "Mb");
+
+
+		// throughput of random put and get operations
+		random = new Random(42);
+		long hits = 0;
+		long startTime = System.nanoTime();
+		for (int i=0; i<operations; i++) {
+			long key = randomKey(random);
+			tpTable.put(key, (byte) (i % 30 + 1));
+			if (tpTable.get(key ^ 1) != 0) {
+				hits++;
+			}
+		}
+		long elapsed = System.nanoTime() - startTime;
+		log.info(name + ": " + (operations * 1000L / Math.max(1, elapsed / 1000000)) + " put/get pairs per second, hits: " + hits);
+
+
+		// solve the test positions with the table
+		TestPositionParser parser = new TestPositionParser();
+		List<TestPosition> testPositionList = parser.positionsFromFile(testFilePath);
+		Connect4Solver solver = new Connect4Solver(true, -1, tableSupplier.get());
+		long gcTime = totalGcTime();
+		startTime = System.nanoTime();
+		for (TestPosition testPosition : testPositionList) {
+			Position position = testPosition.toPosition();
+			int score = solver.findBestScore(position);
+			if (score != testPosition.getScore()) {
+				log.severe("error in solver!! calculated score: " + score + ", true score: " + testPosition.getScore());
+			}
+		}
+		elapsed = System.nanoTime() - startTime;
+		double meanTime = (double) elapsed / testPositionList.size() / 1000000D;
+		log.info(name + ": mean solve time " + meanTime + "ms, gc time " + (totalGcTime() - gcTime) + "ms");
+	}
+
+
+	/**
+	 * returns a random key in the range of the possible position keys
+	 * @param random	random number generator
+	 * @return
+	 */
+	private long randomKey(Random random) {
+		return random.nextLong() >>> (Long.SIZE - AppConfig.boardSize - AppConfig.boardWidth);
+	}
+
+
+	/**
+	 * returns the used heap memory after a garbage collection
+	 * @return
+	 */
+	private long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i=0; i<3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+
+	/**
+	 * returns the accumulated time of all garbage collections in ms
+	 * @return
+	 */
+	private long totalGcTime() {
+		long gcTime = 0;
+		for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcTime += Math.max(0, gcBean.getCollectionTime());
+		}
+		return gcTime;
+	}
+}
@@ -0,0 +1,168 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.game.ArrayNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.HashNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.MappedNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.MultiDepthBook;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.connect4.connect4_nply.game.WeakNplyBook;
+import ch.wenkst.connect4.connect4_nply.solver.NplyBookLoader;
+
+public class NplyBookLoaderTest {
+	private File dir; 		// directory with the books of 8, 9 and 10 ply
+
+
+	/**
+	 * writes small books, the key 2 is part of the 8ply and the 9ply book with different scores
+	 */
+	@BeforeEach
+	public void writeBooks() throws IOException {
+		dir = Files.createTempDirectory("connect4_books").toFile();
+		writeBook(8, entry(1, 5), entry(2, -3), entry(3, 0));
+		writeBook(9, entry(2, 7), entry(4, -1));
+		writeBook(10, entry(5, 2));
+	}
+
+
+	@AfterEach
+	public void deleteBooks() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+
+	/**
+	 * the multi depth book answers with the book of the move count of the position
+	 */
+	@Test
+	public void multiDepthProbe() throws IOException {
+		NplyBookLoader loader = new NplyBookLoader(dirPath(), 1 << 20, 1 << 20);
+		MultiDepthBook book = new MultiDepthBook();
+		assertTrue(book.isEmpty(), "no book added");
+		for (int nply=8; nply<=9; nply++) {
+			book.add(nply, loader.load(nply, false));
+		}
+
+		assertFalse(book.isEmpty(), "books added");
+		assertTrue(book.contains(8), "8ply book loaded");
+		assertTrue(book.contains(9), "9ply book loaded");
+		assertFalse(book.contains(7), "no 7ply book");
+		assertFalse(book.contains(10), "10ply book not added");
+		assertEquals(5, book.size(), "positions of both depths");
+
+		assertEquals(-3, book.get(2, 8), "score of the 8ply book");
+		assertEquals(7, book.get(2, 9), "score of the 9ply book");
+		assertEquals(5, book.get(1, 8), "position of the 8ply book");
+		assertEquals(NplyBook.notFound, book.get(1, 9), "position is not part of the 9ply book");
+		assertEquals(NplyBook.notFound, book.get(4, 8), "position is not part of the 8ply book");
+		assertEquals(NplyBook.notFound, book.get(5, 10), "no book for the move count");
+	}
+
+
+	/**
+	 * the books are copied to the heap as long as they fit into the heap budget, then mapped as long as they
+	 * fit into the mapped budget and skipped afterwards. every book is only loaded once
+	 */
+	@Test
+	public void memoryBudgets() throws IOException {
+		long size8 = bookFile(8).length();
+		long size9 = bookFile(9).length();
+		NplyBookLoader loader = new NplyBookLoader(dirPath(), size8, size9);
+
+		NplyBook book8 = loader.load(8, false);
+		assertTrue(book8 instanceof ArrayNplyBook, "8ply book fits into the heap budget");
+		assertEquals(-3, book8.get(2), "score of the heap book");
+		NplyBook book9 = loader.load(9, false);
+		assertTrue(book9 instanceof MappedNplyBook, "9ply book only fits into the mapped budget");
+		assertEquals(7, book9.get(2), "score of the mapped book");
+		assertNull(loader.load(10, false), "10ply book does not fit into any budget");
+		assertNull(loader.load(11, false), "no 11ply book");
+		assertSame(book8, loader.load(8, false), "book is loaded once");
+
+		// the weak books have their own entries but share the budgets
+		NplyBook weakBook9 = loader.load(9, true);
+		assertNull(weakBook9, "budgets are used up");
+
+		NplyBookLoader weakLoader = new NplyBookLoader(dirPath(), MappedNplyBook.open(bookFile(8).getPath(), 8).weakBookMemory(), 0);
+		NplyBook weakBook8 = weakLoader.load(8, true);
+		assertTrue(weakBook8 instanceof WeakNplyBook, "weak 8ply book fits into the heap budget");
+		assertEquals(-1, weakBook8.get(2), "result of the weak book");
+		assertNull(weakLoader.load(9, true), "weak 9ply book does not fit into any budget");
+		assertNull(weakLoader.load(8, false), "exact 8ply book does not fit into any budget");
+	}
+
+
+	/**
+	 * the csv-file is only parsed if all its positions fit into the heap budget, a budget that is not used up yet
+	 * is not enough
+	 */
+	@Test
+	public void csvBudget() throws IOException {
+		List<String> lines = List.of("position,disk_mask,score", "1,3,5", "2,3,-4", "4,12,0");
+		Files.write(new File(dir, "connect4_11ply.csv").toPath(), lines, StandardCharsets.UTF_8);
+
+		assertNull(new NplyBookLoader(dirPath(), 24, 1 << 20).load(11, false), "csv-file does not fit into the heap budget");
+		NplyBook book = new NplyBookLoader(dirPath(), 1 << 20, 0).load(11, false);
+		assertTrue(book instanceof HashNplyBook, "csv-file fits into the heap budget");
+		assertEquals(3, book.size(), "positions of the csv-file");
+	}
+
+
+	/**
+	 * returns the path of the book directory
+	 * @return
+	 */
+	private String dirPath() {
+		return dir.getPath() + File.separator;
+	}
+
+
+	/**
+	 * returns the binary book file of the passed nply
+	 * @param nply		number of moves played in the positions of the book
+	 * @return
+	 */
+	private File bookFile(int nply) {
+		return new File(dir, "connect4_" + nply + "ply.book");
+	}
+
+
+	/**
+	 * returns the book entry of a position
+	 * @param key		canonical key of the position
+	 * @param score		score of the position
+	 * @return
+	 */
+	private long entry(long key, int score) {
+		return key << Byte.SIZE | (score & 0xFF);
+	}
+
+
+	/**
+	 * writes a binary book with the passed sorted entries
+	 * @param nply			number of moves played in the positions of the book
+	 * @param entries		entries of the positions sorted by their key
+	 * @throws IOException
+	 */
+	private void writeBook(int nply, long... entries) throws IOException {
+		MappedNplyBook.writeEntries(bookFile(nply).getPath(), nply, entries, entries.length);
+	}
+}
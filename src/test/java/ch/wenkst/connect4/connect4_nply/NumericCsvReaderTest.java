@@ -0,0 +1,165 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.io.NumericCsvReader;
+
+public class NumericCsvReaderTest {
+	/**
+	 * a file of a few Mb without a line break at the end is split into several chunks and segments, all lines
+	 * need to be read once in the order of the file
+	 */
+	@Test
+	public void readChunksAndSegments() throws IOException {
+		int lineCount = 200000;
+		StringBuilder csv = new StringBuilder("name,position,disk_mask,score\n");
+		for (int i=0; i<lineCount; i++) {
+			csv.append("line ").append(i).append(',').append(i * 1000003L).append(',').append(-i).append(',').append(i % 37 - 18);
+			if (i < lineCount - 1) {
+				csv.append('\n');
+			}
+		}
+
+		long[] positions = new long[lineCount];
+		long[] scores = new long[lineCount];
+		for (int i=0; i<lineCount; i++) {
+			positions[i] = i * 1000003L;
+			scores[i] = i % 37 - 18;
+		}
+
+		File file = writeTempFile(csv.toString());
+		try {
+			assertTrue(file.length() > 4 << 20, "file has several chunks of 1Mb");
+			for (long segmentSize : new long[] {1L << 30, 1 << 20, 1 << 16}) {
+				try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), segmentSize, "score", "position")) {
+					long[][] columns = reader.readAll(4);
+					assertArrayEquals(scores, columns[0], "scores with segments of " + segmentSize + " bytes");
+					assertArrayEquals(positions, columns[1], "positions with segments of " + segmentSize + " bytes");
+				}
+
+				try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), segmentSize, "score", "position")) {
+					for (int i=0; i<lineCount; i++) {
+						assertTrue(reader.next(), "line " + i);
+						assertEquals(scores[i], reader.get(0), "score of line " + i);
+						assertEquals(positions[i], reader.get(1), "position of line " + i);
+					}
+					assertFalse(reader.next(), "end of the file with segments of " + segmentSize + " bytes");
+				}
+			}
+
+		} finally {
+			file.delete();
+		}
+	}
+
+
+	/**
+	 * the names of the header can be quoted, carriage returns and empty lines are skipped. the lines that
+	 * are not read by the cursor are read by readAll
+	 */
+	@Test
+	public void quotedHeaderAndCrlf() throws IOException {
+		File file = writeTempFile("\"position\",\"disk_mask\",\"score\"\r\n1,3,-2\r\n\r\n5,7,0\r\n-9,11,18\r\n");
+		try {
+			// segments of 12 bytes contain one or two lines
+			for (long segmentSize : new long[] {1 << 20, 12}) {
+				try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), segmentSize, "disk_mask", "score")) {
+					assertTrue(reader.next(), "first line");
+					assertEquals(3, reader.get(0), "disk mask of the first line");
+					assertEquals(-2, reader.get(1), "score of the first line");
+
+					long[][] columns = reader.readAll(2);
+					assertArrayEquals(new long[] {7, 11}, columns[0], "disk masks of the remaining lines");
+					assertArrayEquals(new long[] {0, 18}, columns[1], "scores of the remaining lines");
+					assertFalse(reader.next(), "all lines are read");
+				}
+			}
+
+		} finally {
+			file.delete();
+		}
+	}
+
+
+	/**
+	 * a file with only the header and a cursor that has read every line return empty columns
+	 */
+	@Test
+	public void noRemainingLines() throws IOException {
+		File file = writeTempFile("position,disk_mask,score\n");
+		try {
+			try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), "position", "score")) {
+				assertFalse(reader.next(), "file without lines");
+			}
+			try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), "position", "score")) {
+				long[][] columns = reader.readAll(2);
+				assertEquals(2, columns.length, "one array per column");
+				assertEquals(0, columns[0].length, "no positions");
+				assertEquals(0, columns[1].length, "no scores");
+			}
+
+		} finally {
+			file.delete();
+		}
+
+		File readFile = writeTempFile("position,disk_mask,score\n1,3,-2\n");
+		try (NumericCsvReader reader = new NumericCsvReader(readFile.getPath(), "position", "score")) {
+			assertTrue(reader.next(), "first line");
+			assertFalse(reader.next(), "all lines are read");
+			long[][] columns = reader.readAll(2);
+			assertEquals(0, columns[0].length, "no remaining positions");
+			assertEquals(0, columns[1].length, "no remaining scores");
+
+		} finally {
+			readFile.delete();
+		}
+	}
+
+
+	/**
+	 * missing columns, values that are not numbers and lines that are longer than a segment are reported
+	 */
+	@Test
+	public void invalidFiles() throws IOException {
+		File file = writeTempFile("position,disk_mask\n1,2\n3,x4\n");
+		try {
+			assertThrows(IOException.class, () -> new NumericCsvReader(file.getPath(), "position", "score"), "missing column");
+
+			try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), "position", "disk_mask")) {
+				assertTrue(reader.next(), "first line");
+				assertThrows(IOException.class, () -> reader.next(), "value that is not a number");
+			}
+			try (NumericCsvReader reader = new NumericCsvReader(file.getPath(), "position", "disk_mask")) {
+				assertThrows(IOException.class, () -> reader.readAll(2), "value that is not a number");
+			}
+			assertThrows(IOException.class, () -> new NumericCsvReader(file.getPath(), 3, "position"), "line longer than a segment");
+
+		} finally {
+			file.delete();
+		}
+	}
+
+
+	/**
+	 * writes the passed content to a temporary file
+	 * @param content		content of the file
+	 * @return				the file
+	 * @throws IOException
+	 */
+	private File writeTempFile(String content) throws IOException {
+		File file = File.createTempFile("connect4", ".csv");
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+}
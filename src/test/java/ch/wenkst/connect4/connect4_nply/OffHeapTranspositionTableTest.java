@@ -0,0 +1,136 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.BucketTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.OffHeapTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.SharedTranspositionTable;
+
+public class OffHeapTranspositionTableTest {
+	private static final int size = 1 << 16; 		// smallest table, it has 2^14 buckets with 4 entries
+	private static final int bucketBits = 14;
+	private static final int pageBits = 10; 		// pages of 2^10 entries, the table has 64 pages
+	private static final int keyBits = AppConfig.boardSize + AppConfig.boardWidth;
+
+
+	/**
+	 * the off-heap table with many pages needs to behave exactly like the table on the heap, also for the
+	 * buckets at the start and the end of the pages and after the tables are cleared
+	 */
+	@Test
+	public void sameAsHeapTable() throws IOException {
+		sameEntries(new OffHeapTranspositionTable((long) size * Long.BYTES, pageBits));
+	}
+
+
+	/**
+	 * the shared tables on and off the heap do not cache the last entry, used by one thread they need to behave
+	 * exactly like the table of a single solver
+	 */
+	@Test
+	public void sharedTables() throws IOException {
+		sameEntries(new SharedTranspositionTable(size));
+		sameEntries(new OffHeapTranspositionTable((long) size * Long.BYTES, pageBits, true));
+	}
+
+
+	/**
+	 * drives the passed table and a bucket table on the heap with the same sequence of bounds and checks that
+	 * they have the same entries, also after they are cleared
+	 * @param offHeapTable		table to compare with the heap table
+	 * @throws IOException
+	 */
+	private void sameEntries(BucketTranspositionTable offHeapTable) throws IOException {
+		BucketTranspositionTable heapTable = new BucketTranspositionTable(size);
+		assertEquals(heapTable.getSize(), offHeapTable.getSize(), "same number of entries");
+
+		long[] keys = keys(6000);
+		Random random = new Random(42);
+		for (int run=0; run<2; run++) {
+			for (int i=0; i<50000; i++) {
+				long key = keys[random.nextInt(keys.length)];
+				byte bound = (byte) (random.nextInt(66) - 2);
+				int work = random.nextInt(70);
+				int move = random.nextInt(8) - 1;
+				if (random.nextBoolean()) {
+					assertEquals(heapTable.put(key, bound, work, move), offHeapTable.put(key, bound, work, move), "same overwrite of the upper bound");
+				} else {
+					assertEquals(heapTable.putLower(key, bound, work, move), offHeapTable.putLower(key, bound, work, move), "same overwrite of the lower bound");
+				}
+				if (i % 5000 == 0) {
+					heapTable.nextGeneration();
+					offHeapTable.nextGeneration();
+				}
+			}
+			assertSameEntries(heapTable, offHeapTable, keys);
+
+			heapTable.clear();
+			offHeapTable.clear();
+			for (long key : keys) {
+				assertEquals(0, offHeapTable.get(key), "no upper bound after the clear");
+				assertEquals(0, offHeapTable.getLower(key), "no lower bound after the clear");
+				assertEquals(-1, offHeapTable.getMove(key), "no move after the clear");
+			}
+		}
+	}
+
+
+	/**
+	 * checks that both tables return the same values for all keys and have the same snapshot
+	 * @param heapTable			table on the heap
+	 * @param offHeapTable		table to compare with the heap table
+	 * @param keys				keys of the positions
+	 * @throws IOException
+	 */
+	private void assertSameEntries(BucketTranspositionTable heapTable, BucketTranspositionTable offHeapTable, long[] keys) throws IOException {
+		for (long key : keys) {
+			assertEquals(heapTable.get(key), offHeapTable.get(key), "same upper bound");
+			assertEquals(heapTable.getLower(key), offHeapTable.getLower(key), "same lower bound");
+			assertEquals(heapTable.getMove(key), offHeapTable.getMove(key), "same move");
+		}
+
+		File heapSnapshot = File.createTempFile("connect4", ".tt");
+		File offHeapSnapshot = File.createTempFile("connect4", ".tt");
+		try {
+			heapTable.save(heapSnapshot.getPath());
+			offHeapTable.save(offHeapSnapshot.getPath());
+			assertArrayEquals(Files.readAllBytes(heapSnapshot.toPath()), Files.readAllBytes(offHeapSnapshot.toPath()), "same entries");
+
+		} finally {
+			heapSnapshot.delete();
+			offHeapSnapshot.delete();
+		}
+	}
+
+
+	/**
+	 * returns keys whose buckets are the last bucket of a page or the first bucket of the next page, the bucket is
+	 * defined by the upper bits of the hash of the key. the buckets at the page boundaries get more keys than they
+	 * can save, the entries are therefore replaced
+	 * @param count		number of keys
+	 * @return
+	 */
+	private long[] keys(int count) {
+		long[] keys = new long[count];
+		long keyMask = (1L << keyBits) - 1;
+		int bucketsPerPage = 1 << (pageBits - 2);
+		int found = 0;
+		for (long key=1; found<count; key++) {
+			long bucket = ((key * 0x9E3779B97F4A7C15L) & keyMask) >>> (keyBits - bucketBits);
+			long pageBucket = bucket % bucketsPerPage;
+			if (pageBucket == 0 || pageBucket == bucketsPerPage - 1) {
+				keys[found++] = key;
+			}
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,124 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.solver.PositionGenerator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+public class PositionGeneratorTest {
+	/**
+	 * the solved position files are named by the index of the positions, the generator therefore needs to create
+	 * the positions in the same order as the original generator. the first and the last position were created
+	 * with the original generator that played all column sequences in lexicographic order
+	 */
+	@Test
+	public void generatedPositionOrder() throws IOException {
+		checkGeneratedPositions(6, 7603, "21,63", "44040192,132120576");
+		checkGeneratedPositions(7, 25316, "42,191", "88080384,132136960");
+		checkGeneratedPositions(8, 77154, "149,447", "111149056,400572416");
+	}
+
+
+	/**
+	 * all 6 ply positions need to be generated in the same order as all column sequences are played in
+	 * lexicographic order, a mirrored position is only added if its mirror was not found before
+	 */
+	@Test
+	public void generatedPositionsLikeSequences() throws IOException {
+		int nply = 6;
+		Long2ObjectLinkedOpenHashMap<Position> expected = new Long2ObjectLinkedOpenHashMap<>();
+		long sequences = (long) Math.pow(AppConfig.boardWidth, nply);
+		for (long i=0; i<sequences; i++) {
+			Position position = new Position();
+			boolean legal = true;
+			long sequence = i;
+			long divisor = sequences / AppConfig.boardWidth;
+			for (int move=0; move<nply && legal; move++) {
+				int col = (int) (sequence / divisor);
+				sequence %= divisor;
+				divisor /= AppConfig.boardWidth;
+				legal = position.legalMove(col) && !position.isWinningMove(col);
+				if (legal) {
+					position.play(col);
+				}
+			}
+
+			if (legal && !position.isWon() && !expected.containsKey(position.toKey()) && !expected.containsKey(position.mirror().toKey())) {
+				expected.put(position.toKey(), position);
+			}
+		}
+
+		StringWriter expectedCsv = new StringWriter();
+		try (CSVPrinter csvPrinter = new CSVPrinter(expectedCsv, CSVFormat.DEFAULT)) {
+			for (Position position : expected.values()) {
+				csvPrinter.printRecord(position.getPosition(), position.getDiskMask());
+			}
+		}
+		assertEquals(expectedCsv.toString(), generate(nply), "positions in the order of the column sequences");
+	}
+
+
+	/**
+	 * the parallel generator needs to find the same positions as the generator with one thread, also if the
+	 * subtrees start after all moves are played
+	 */
+	@Test
+	public void parallelKeys() throws IOException {
+		int nply = 8;
+		String[] records = generate(nply).split("\r\n");
+		long[] expected = new long[records.length];
+		for (int i=0; i<records.length; i++) {
+			String[] values = records[i].split(",");
+			expected[i] = Position.canonicalKey(Long.parseLong(values[0]) + Long.parseLong(values[1]));
+		}
+		Arrays.sort(expected);
+
+		PositionGenerator generator = new PositionGenerator(nply);
+		assertArrayEquals(expected, generator.generateKeys(3, 2), "subtrees after 2 moves");
+		assertArrayEquals(expected, generator.generateKeys(4, 4), "subtrees after 4 moves");
+		assertArrayEquals(expected, generator.generateKeys(2, nply), "subtrees after all moves");
+		assertArrayEquals(expected, generator.generateKeys(2, nply + 3), "prefix longer than the positions");
+	}
+
+
+	/**
+	 * checks the number of generated positions and the first and the last position
+	 * @param nply			number of moves played in the positions
+	 * @param count			expected number of positions
+	 * @param first			expected first record
+	 * @param last			expected last record
+	 * @throws IOException
+	 */
+	private void checkGeneratedPositions(int nply, int count, String first, String last) throws IOException {
+		String[] records = generate(nply).split("\r\n");
+		assertEquals(count, records.length, nply + " ply positions");
+		assertEquals(first, records[0], "first " + nply + " ply position");
+		assertEquals(last, records[records.length-1], "last " + nply + " ply position");
+	}
+
+
+	/**
+	 * generates all nply positions with one thread
+	 * @param nply			number of moves played in the positions
+	 * @return				the positions in csv-format without header
+	 * @throws IOException
+	 */
+	private String generate(int nply) throws IOException {
+		StringWriter csv = new StringWriter();
+		try (CSVPrinter csvPrinter = new CSVPrinter(csv, CSVFormat.DEFAULT)) {
+			new PositionGenerator(nply).generate(csvPrinter);
+		}
+		return csv.toString();
+	}
+}
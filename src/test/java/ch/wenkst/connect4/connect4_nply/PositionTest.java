@@ -36,6 +36,35 @@ public class PositionTest {
 
 			assertEquals(p2.getPosition(), p1Mirror.getPosition(), "mirrored positions are equal");
 			assertEquals(p2.getDiskMask(), p1Mirror.getDiskMask(), "mirrored disk masks are equal");
+			assertEquals(p2.toCanonicalKey(), p1.toCanonicalKey(), "mirrored positions have the same canonical key");
+		}
+	}
+	
+	
+	/**
+	 * the mirroring with fixed masks needs to give the same result as swapping the columns one by one
+	 */
+	@Test
+	public void mirrorSameAsColumnLoop() {
+		Random random = new Random(42);
+		for (int j=0; j<10000; j++) {
+			// play random moves until the game is won or the number of moves is reached
+			Position position = new Position();
+			int moveCount = random.nextInt(AppConfig.boardSize + 1);
+			for (int i=0; i<moveCount; i++) {
+				int move = random.nextInt(AppConfig.boardWidth);
+				if (!position.legalMove(move) || position.isWinningMove(move)) {
+					continue;
+				}
+				position.play(move);
+			}
+
+			Position mirror = position.mirror();
+			long key = position.toKey();
+			assertEquals(columnLoopMirror(position.getPosition()), mirror.getPosition(), "mirrored position");
+			assertEquals(columnLoopMirror(position.getDiskMask()), mirror.getDiskMask(), "mirrored disk mask");
+			assertEquals(Math.min(key, columnLoopMirror(key)), position.toCanonicalKey(), "canonical key");
+			assertEquals(Math.min(key, columnLoopMirror(key)), Position.canonicalKey(key), "canonical key of the key");
 		}
 	}
 	
@@ -67,4 +96,20 @@ public class PositionTest {
 		assertEquals(expectedPosition.getPosition(), position.getPosition(), "position from move sequence equal");
 		assertEquals(expectedPosition.getDiskMask(), position.getDiskMask(), "disk mask from move sequence equal");
 	}
+	
+	
+	/**
+	 * mirrors a number representing a board by swapping every column with its mirrored column in a loop
+	 * @param number 	any number representing some board configuration (position, disk mask, key etc)
+	 * @return
+	 */
+	private long columnLoopMirror(long number) {
+		long columnMask = (1L << (AppConfig.boardHeight+1))-1;
+		long mirroredNumber = 0;
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			long column = (number >>> col*(AppConfig.boardHeight+1)) & columnMask;
+			mirroredNumber |= column << (AppConfig.boardWidth-1-col)*(AppConfig.boardHeight+1);
+		}
+		return mirroredNumber;
+	}
 }
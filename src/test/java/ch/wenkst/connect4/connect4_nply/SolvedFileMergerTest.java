@@ -0,0 +1,124 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.game.Position;
+import ch.wenkst.connect4.connect4_nply.io.SolvedFileMerger;
+
+public class SolvedFileMergerTest {
+	/**
+	 * the positions of all files are merged in the order of their canonical key, duplicates and conflicting
+	 * scores are counted and the gaps, overlaps and incomplete files are reported
+	 */
+	@Test
+	public void mergeFiles() throws IOException {
+		Position p0 = position(0);
+		Position p1 = position(1);
+		Position p2 = position(0, 1);
+		Position p3 = position(3);
+		Position p4 = position(2, 2);
+		Position p1Mirror = position(5); 		// the mirror of p1 has the same canonical key
+
+		File dir = Files.createTempDirectory("connect4_solved").toFile();
+		try {
+			List<String> filePaths = new ArrayList<>();
+			filePaths.add(writeFile(dir, "0000002_0000005.csv", p2, 3, p3, 4, p1Mirror, -1)); 	// overlaps the first file
+			filePaths.add(writeFile(dir, "0000007_0000009.csv", p4, -5)); 					// after a gap, one position missing
+			filePaths.add(writeFile(dir, "0000000_0000003.csv", p0, 1, p1, 2, p2, 3));
+
+			SolvedFileMerger merger = new SolvedFileMerger(filePaths);
+			long[] entries = merger.merge(2);
+
+			long[] expectedKeys = {p0.toCanonicalKey(), p1.toCanonicalKey(), p2.toCanonicalKey(), p3.toCanonicalKey(), p4.toCanonicalKey()};
+			Arrays.sort(expectedKeys);
+			long[] keys = new long[entries.length];
+			for (int i=0; i<entries.length; i++) {
+				keys[i] = entries[i] >>> Byte.SIZE;
+			}
+			assertArrayEquals(expectedKeys, keys, "every canonical key once in ascending order");
+			assertEquals(3, score(entries, p2), "score of a duplicate position");
+			assertEquals(4, score(entries, p3), "score of the position");
+			assertEquals(-5, score(entries, p4), "negative score");
+
+			assertEquals(2, merger.duplicates(), "p2 and the mirror of p1 are duplicates");
+			assertEquals(1, merger.conflicts(), "p1 and its mirror have different scores");
+			assertEquals(p1.toCanonicalKey(), merger.firstConflictKey(), "key of the conflict");
+			assertEquals(9, merger.coveredEnd(), "end of the last file");
+
+			List<String> problems = merger.coverageProblems();
+			assertEquals(3, problems.size(), "overlap, gap and incomplete file");
+			assertTrue(problems.get(0).startsWith("overlap: the positions 2 to 3 "), problems.get(0));
+			assertEquals("gap: the positions 5 to 7 are not solved", problems.get(1));
+			assertTrue(problems.get(2).startsWith("incomplete: ") && problems.get(2).endsWith(" contains 1 positions instead of 2"), problems.get(2));
+
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+
+	/**
+	 * creates the position after the passed moves
+	 * @param moves		columns of the moves
+	 * @return
+	 */
+	private Position position(int... moves) {
+		Position position = new Position();
+		for (int move : moves) {
+			position.play(move);
+		}
+		return position;
+	}
+
+
+	/**
+	 * returns the score of a position in the merged entries
+	 * @param entries		the merged entries
+	 * @param position		the position
+	 * @return
+	 */
+	private byte score(long[] entries, Position position) {
+		for (long entry : entries) {
+			if (entry >>> Byte.SIZE == position.toCanonicalKey()) {
+				return (byte) entry;
+			}
+		}
+		throw new AssertionError("position is not merged");
+	}
+
+
+	/**
+	 * writes a solved file with the passed positions and scores
+	 * @param dir			directory of the file
+	 * @param name			name of the file, defines the index range
+	 * @param solutions		position and score pairs
+	 * @return				path of the file
+	 * @throws IOException
+	 */
+	private String writeFile(File dir, String name, Object... solutions) throws IOException {
+		StringBuilder csv = new StringBuilder("position,disk_mask,score\r\n");
+		for (int i=0; i<solutions.length; i+=2) {
+			Position position = (Position) solutions[i];
+			csv.append(position.getPosition()).append(',').append(position.getDiskMask()).append(',').append(solutions[i+1]).append("\r\n");
+		}
+
+		File file = new File(dir, name);
+		Files.write(file.toPath(), csv.toString().getBytes(StandardCharsets.US_ASCII));
+		return file.getPath();
+	}
+}
@@ -0,0 +1,127 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.game.SolvedPositionStore;
+
+public class SolvedPositionStoreTest {
+	/**
+	 * the positions added to the log need to be found after the store is opened again, an incomplete
+	 * last entry of the log is ignored
+	 */
+	@Test
+	public void reopenStore() throws IOException {
+		File dir = Files.createTempDirectory("connect4_store").toFile();
+		String dirPath = dir.getPath() + File.separator;
+		try {
+			SolvedPositionStore store = SolvedPositionStore.open(dirPath);
+			for (long key=1; key<=1000; key++) {
+				store.put(key * 7919, (byte) (key % 37 - 18));
+			}
+			store.put(7919, (byte) 5); 		// already part of the store, the first score is kept
+			assertEquals((byte) -17, store.get(7919), "score of a position in the log");
+			assertEquals(SolvedPositionStore.notFound, store.get(3), "position that is not part of the store");
+			store.close();
+			
+			// append an incomplete entry as if the process was killed while writing it
+			try (RandomAccessFile log = new RandomAccessFile(dirPath + "positions.log", "rw")) {
+				log.seek(log.length());
+				log.write(new byte[] {1, 2, 3});
+			}
+			
+			store = SolvedPositionStore.open(dirPath);
+			assertEquals(1000, store.size(), "all positions are merged into the index");
+			for (long key=1; key<=1000; key++) {
+				assertEquals((byte) (key % 37 - 18), store.get(key * 7919), "score of a position in the index");
+			}
+			store.close();
+			
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+
+	/**
+	 * two stores of the same directory, e.g. of two processes, can be open at the same time. a store finds the
+	 * positions of the other store after they are merged into the index, an incomplete entry of a killed process
+	 * is overwritten by the next entry
+	 */
+	@Test
+	public void sharedStore() throws IOException {
+		File dir = Files.createTempDirectory("connect4_store").toFile();
+		String dirPath = dir.getPath() + File.separator;
+		try {
+			SolvedPositionStore first = SolvedPositionStore.open(dirPath);
+			first.put(1, (byte) 1);
+			SolvedPositionStore second = SolvedPositionStore.open(dirPath);
+			assertEquals(1, second.get(1), "position of the first store merged into the index");
+			assertEquals(1, first.get(1), "recent position of the first store");
+			
+			second.put(2, (byte) 2);
+			try (RandomAccessFile log = new RandomAccessFile(dirPath + "positions.log", "rw")) {
+				log.seek(log.length());
+				log.write(new byte[] {1, 2, 3});
+			}
+			first.put(3, (byte) 3);
+			assertEquals(SolvedPositionStore.notFound, first.get(2), "position of the second store is not merged yet");
+			first.close();
+			second.close();
+			
+			SolvedPositionStore store = SolvedPositionStore.open(dirPath);
+			assertEquals(3, store.size(), "positions of both stores");
+			for (int key=1; key<=3; key++) {
+				assertEquals(key, store.get(key), "position of both stores in the index");
+			}
+			store.close();
+			
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+
+	/**
+	 * the recent positions are merged into the index once their limit is reached
+	 */
+	@Test
+	public void recentLimit() throws IOException {
+		File dir = Files.createTempDirectory("connect4_store").toFile();
+		String dirPath = dir.getPath() + File.separator;
+		try {
+			SolvedPositionStore store = SolvedPositionStore.open(dirPath, 100);
+			for (long key=1; key<=1000; key++) {
+				store.put(key * 7919, (byte) (key % 37 - 18));
+			}
+			assertEquals(1000, store.size(), "positions of the index and the recent positions");
+			for (long key=1; key<=1000; key++) {
+				assertEquals((byte) (key % 37 - 18), store.get(key * 7919), "score of an added position");
+			}
+			assertTrue(new File(dirPath + "positions.log").length() < 100 * Long.BYTES, "log is merged into the index");
+			store.close();
+			
+		} finally {
+			deleteDir(dir);
+		}
+	}
+
+
+	/**
+	 * deletes the files of a directory and the directory
+	 * @param dir		the directory
+	 */
+	private void deleteDir(File dir) {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+}
@@ -1,19 +1,37 @@
 package ch.wenkst.connect4.connect4_nply;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.ArrayNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.ArrayTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.HashMapTranspositionTable;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.connect4.connect4_nply.game.OffHeapTranspositionTable;
 import ch.wenkst.connect4.connect4_nply.game.Position;
 import ch.wenkst.connect4.connect4_nply.game.SolvedPosition;
+import ch.wenkst.connect4.connect4_nply.io.SolvedFileMerger;
 import ch.wenkst.connect4.connect4_nply.position.TestPosition;
 import ch.wenkst.connect4.connect4_nply.position.TestPositionParser;
+import ch.wenkst.connect4.connect4_nply.solver.BookDeriver;
 import ch.wenkst.connect4.connect4_nply.solver.Connect4Solver;
+import ch.wenkst.connect4.connect4_nply.solver.ParallelSolver;
+import ch.wenkst.connect4.connect4_nply.solver.PositionGenerator;
 import ch.wenkst.sw_utils.Utils;
+import ch.wenkst.sw_utils.file.FileUtils;
 
 public class SolverTest {
 	private static String testFilePath = Utils.getWorkDir() + File.separator + "test" + File.separator + "test_positions.txt";
@@ -26,6 +44,7 @@ public class SolverTest {
 	private static Connect4Solver ply10Solver;
 	private static Connect4Solver ply11Solver;
 	private static Connect4Solver ply12Solver;
+	private static ParallelSolver parallelSolver;
 	
 	
 	@BeforeAll
@@ -40,6 +59,7 @@ public class SolverTest {
 		ply10Solver = new Connect4Solver(true, 10);
 		ply11Solver = new Connect4Solver(true, 11);
 		ply12Solver = new Connect4Solver(true, 12);
+		parallelSolver = new ParallelSolver(4, true, -1);
 	}
 	
 	
@@ -97,6 +117,144 @@ public class SolverTest {
 	}
 	
 	
+	/**
+	 * weak solver that uses the weak 8ply book if it exists, only the sign of the score is found
+	 */
+	@Test
+	public void weakSolverTest() {
+		Connect4Solver weakSolver = new Connect4Solver(false, 8);
+		for (TestPosition testPosition : testPositionList) {
+			Position position = testPosition.toPosition();
+			int score = weakSolver.findBestScore(position);
+			int expectedScore = Integer.signum(testPosition.getScore());
+			
+			assertEquals(expectedScore, score, "weak score solved correctly");
+		}
+	}
+	
+	
+	/**
+	 * solver that uses many threads to solve a position
+	 */
+	@Test
+	public void parallelSolverTest() {
+		for (TestPosition testPosition : testPositionList) {
+			Position position = testPosition.toPosition();
+			int score = parallelSolver.findBestScore(position);
+			int expectedScore = testPosition.getScore();
+			
+			assertEquals(expectedScore, score, "score solved correctly");
+		}
+	}
+	
+	
+	/**
+	 * solver that uses many threads with a shared off-heap table, the scores need to be the same as the ones
+	 * of a single thread with its own bucket table
+	 */
+	@Test
+	public void parallelOffHeapTableTest() {
+		ParallelSolver offHeapSolver = new ParallelSolver(4, true, -1, new OffHeapTranspositionTable(32L << 20, 16, true));
+		Connect4Solver bucketSolver = new Connect4Solver(true, -1, Connect4Solver.createTpTable(32L << 20));
+		try {
+			for (TestPosition testPosition : testPositionList) {
+				Position position = testPosition.toPosition();
+				int expectedScore = bucketSolver.findBestScore(position);
+				assertEquals(testPosition.getScore(), expectedScore, "score solved correctly by one thread");
+				assertEquals(expectedScore, offHeapSolver.findBestScore(position), "same score with the shared table");
+			}
+		} finally {
+			offHeapSolver.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * the parallel root search needs to find the same optimal moves as the solver that solves all moves
+	 */
+	@Test
+	public void parallelOptimalMovesTest() {
+		for (TestPosition testPosition : testPositionList) {
+			Position position = testPosition.toPosition();
+			SolvedPosition expected = ply12Solver.findOptimalMoves(position);
+			SolvedPosition solution = parallelSolver.findOptimalMoves(position);
+			
+			assertEquals(expected.getStrongScore(), solution.getStrongScore(), "strong score solved correctly");
+			assertEquals(expected.getStrongMoves(), solution.getStrongMoves(), "strong moves found correctly");
+			assertEquals(expected.getWeakScore(), solution.getWeakScore(), "weak score solved correctly");
+			assertEquals(expected.getWeakMoves(), solution.getWeakMoves(), "weak moves found correctly");
+		}
+	}
+	
+	
+	/**
+	 * a solver that loads the transposition table of another solver needs to have the same table and still
+	 * needs to solve all positions correctly
+	 */
+	@Test
+	public void transpositionTableSnapshotTest() throws IOException {
+		snapshotSolvers(() -> new Connect4Solver(true, 8));
+	}
+	
+	
+	/**
+	 * the array and the hash map table need to be restored from their snapshots in the same way
+	 */
+	@Test
+	public void simpleTableSnapshotTest() throws IOException {
+		snapshotSolvers(() -> new Connect4Solver(true, 8, new ArrayTranspositionTable(AppConfig.tpTableSize)));
+		snapshotSolvers(() -> new Connect4Solver(true, 8, new HashMapTranspositionTable(AppConfig.tpTableSize)));
+	}
+	
+	
+	/**
+	 * the scores of the 9ply positions that are derived from the 10ply book need to be the same as the scores
+	 * found by the solver, a child that is missing in the book is reported
+	 */
+	@Test
+	public void derivedBookTest() throws IOException {
+		// build the 10ply book from the solved files
+		List<String> positionFiles = FileUtils.findFilesByPattern(AppConfig.dirSolvedPos + "10ply", "", "csv");
+		long[] entries = new SolvedFileMerger(positionFiles).merge(2);
+		long[] childKeys = new long[entries.length];
+		byte[] childScores = new byte[entries.length];
+		for (int i=0; i<entries.length; i++) {
+			childKeys[i] = entries[i] >>> Byte.SIZE;
+			childScores[i] = (byte) entries[i];
+		}
+		NplyBook childBook = new ArrayNplyBook(childKeys, childScores);
+		
+		long[] keys = new PositionGenerator(9).generateKeys(2, 4);
+		byte[] scores = new BookDeriver(9, childBook).deriveScores(keys, 2);
+		for (int i=0; i<keys.length; i+=keys.length/200) {
+			Position position = Position.fromKey(keys[i]);
+			assertEquals(ply12Solver.findBestScore(position), scores[i], "derived score is the solved score");
+		}
+		
+		// remove a child of a position that is scored from the book
+		for (long key : keys) {
+			Position position = Position.fromKey(key);
+			long missingKey = bookChildKey(position, childBook);
+			if (missingKey < 0) {
+				continue;
+			}
+			
+			int missingIndex = Arrays.binarySearch(childKeys, missingKey);
+			long[] incompleteKeys = new long[childKeys.length - 1];
+			byte[] incompleteScores = new byte[childKeys.length - 1];
+			System.arraycopy(childKeys, 0, incompleteKeys, 0, missingIndex);
+			System.arraycopy(childKeys, missingIndex + 1, incompleteKeys, missingIndex, incompleteKeys.length - missingIndex);
+			System.arraycopy(childScores, 0, incompleteScores, 0, missingIndex);
+			System.arraycopy(childScores, missingIndex + 1, incompleteScores, missingIndex, incompleteScores.length - missingIndex);
+			
+			BookDeriver deriver = new BookDeriver(9, new ArrayNplyBook(incompleteKeys, incompleteScores));
+			assertThrows(IllegalStateException.class, () -> deriver.score(position), "child is missing in the book");
+			return;
+		}
+		fail("no position with a child in the book");
+	}
+	
+	
 	/**
 	 * tests if the solver can correctly find the optimal move to play
 	 */
@@ -131,6 +289,64 @@ public class SolverTest {
 	}
 	
 	
+	/**
+	 * returns the key of a child of the passed position that the deriver needs to look up in the book
+	 * @param position		the position, it is the same after the method returns
+	 * @param book			book with the children of the position
+	 * @return				canonical key of the child, -1 if the position or all its children are scored by the rules
+	 */
+	private long bookChildKey(Position position, NplyBook book) {
+		if (position.canWinNext() || position.nonLosingMoves() == 0) {
+			return -1;
+		}
+		
+		long nonLosingMoves = position.nonLosingMoves();
+		for (int col=0; col<AppConfig.boardWidth; col++) {
+			long move = nonLosingMoves & Position.columnMask(col);
+			if (move == 0) {
+				continue;
+			}
+			
+			position.play(move);
+			long childKey = position.toCanonicalKey();
+			boolean searched = !position.canWinNext() && position.nonLosingMoves() != 0;
+			position.undo(move);
+			if (searched && book.get(childKey) != NplyBook.notFound) {
+				return childKey;
+			}
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * saves the table of a solver that solved the test positions, loads it into a new solver and checks that
+	 * the loaded table is the same and that the new solver still solves all positions correctly
+	 * @param solverSupplier	creates the solvers with the table to test
+	 * @throws IOException
+	 */
+	private void snapshotSolvers(Supplier<Connect4Solver> solverSupplier) throws IOException {
+		File snapshot = File.createTempFile("connect4", ".tt");
+		File copy = File.createTempFile("connect4", ".tt");
+		try {
+			Connect4Solver solver = solverSupplier.get();
+			solvePositions(solver);
+			solver.saveTranspositionTable(snapshot.getPath());
+			
+			Connect4Solver warmSolver = solverSupplier.get();
+			warmSolver.loadTranspositionTable(snapshot.getPath());
+			warmSolver.saveTranspositionTable(copy.getPath());
+			assertArrayEquals(Files.readAllBytes(snapshot.toPath()), Files.readAllBytes(copy.toPath()), "same table after loading the snapshot");
+			
+			solvePositions(warmSolver);
+			
+		} finally {
+			snapshot.delete();
+			copy.delete();
+		}
+	}
+	
+	
 	/**
 	 * uses the passed solver to solve all the test positions
 	 * @param solver
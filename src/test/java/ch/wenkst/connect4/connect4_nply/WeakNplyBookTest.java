@@ -0,0 +1,144 @@
+package ch.wenkst.connect4.connect4_nply;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ch.wenkst.connect4.connect4_nply.configuration.AppConfig;
+import ch.wenkst.connect4.connect4_nply.game.MappedNplyBook;
+import ch.wenkst.connect4.connect4_nply.game.NplyBook;
+import ch.wenkst.connect4.connect4_nply.game.WeakNplyBook;
+import ch.wenkst.connect4.connect4_nply.solver.PositionGenerator;
+
+public class WeakNplyBookTest {
+	private static final int keyBits = AppConfig.boardSize + AppConfig.boardWidth;
+	private static final long lastKey = (1L << keyBits) - 1;
+
+
+	/**
+	 * every key of the book returns the sign of its score, the keys that are not part of the book are not found
+	 */
+	@Test
+	public void weakResults() {
+		long[] keys = keys();
+		byte[] scores = scores(keys.length);
+		checkBook(new WeakNplyBook(keys, scores), keys, scores);
+	}
+
+
+	/**
+	 * the weak book that is created from the binary book contains the same results
+	 */
+	@Test
+	public void fromMappedBook() throws IOException {
+		long[] keys = keys();
+		byte[] scores = scores(keys.length);
+
+		File file = File.createTempFile("connect4", ".book");
+		try {
+			MappedNplyBook.write(file.getPath(), 8, keys, scores);
+			WeakNplyBook weakBook = MappedNplyBook.open(file.getPath(), 8).toWeakBook();
+			checkBook(weakBook, keys, scores);
+
+		} finally {
+			file.delete();
+		}
+	}
+
+
+	/**
+	 * the keys of the generated positions are close to each other, the weak book needs about 2 bytes per position
+	 */
+	@Test
+	public void closeKeys() throws IOException {
+		long[] keys = new PositionGenerator(8).generateKeys(1, 4);
+		byte[] scores = scores(keys.length);
+
+		File file = File.createTempFile("connect4", ".book");
+		try {
+			MappedNplyBook.write(file.getPath(), 8, keys, scores);
+			MappedNplyBook mappedBook = MappedNplyBook.open(file.getPath(), 8);
+			checkBook(mappedBook.toWeakBook(), keys, scores);
+			assertTrue(mappedBook.weakBookMemory() < 2.5 * keys.length, "weak book memory: " + mappedBook.weakBookMemory());
+
+		} finally {
+			file.delete();
+		}
+	}
+
+
+	/**
+	 * checks the results of the stored keys and that the neighbors of the keys are not found
+	 * @param book		the book to check
+	 * @param keys		keys of the book sorted in ascending order
+	 * @param scores	scores of the keys
+	 */
+	private void checkBook(WeakNplyBook book, long[] keys, byte[] scores) {
+		assertEquals(keys.length, book.size(), "number of positions");
+		for (int i=0; i<keys.length; i++) {
+			assertEquals(Integer.signum(scores[i]), book.get(keys[i]), "result of the key " + Long.toHexString(keys[i]));
+		}
+
+		for (long key : keys) {
+			for (long absentKey : new long[] {key - 1, key + 1, key ^ (1L << 31), key ^ (1L << 40)}) {
+				if (absentKey >= 0 && absentKey >>> keyBits == 0 && Arrays.binarySearch(keys, absentKey) < 0) {
+					assertEquals(NplyBook.notFound, book.get(absentKey), "key " + Long.toHexString(absentKey) + " is not part of the book");
+				}
+			}
+		}
+		assertEquals(NplyBook.notFound, book.get(keys[0] - 1), "key before the first block");
+		assertEquals(NplyBook.notFound, book.get(keys[keys.length-1] + 1), "key after the last block");
+	}
+
+
+	/**
+	 * creates sorted keys of 49 bits without duplicates. the keys contain the smallest and the largest key,
+	 * differences of one and more bytes and blocks with keys that are close to each other and far apart
+	 * @return
+	 */
+	private long[] keys() {
+		Random random = new Random(42);
+		long[] keys = new long[2000];
+		int count = 0;
+
+		// smallest and largest keys
+		for (long key : new long[] {1, 2, 0x7FFFFFFFL, 0x80000000L, lastKey - 1, lastKey}) {
+			keys[count++] = key;
+		}
+
+		// keys that are close to each other
+		long key = 12345L << Integer.SIZE;
+		for (int i=0; i<300; i++) {
+			key += 1 + random.nextInt(i < 150 ? 127 : 20000);
+			keys[count++] = key;
+		}
+
+		// random keys in the whole range
+		while (count < keys.length) {
+			keys[count++] = random.nextLong() >>> (Long.SIZE - keyBits);
+		}
+
+		return Arrays.stream(keys).sorted().distinct().toArray();
+	}
+
+
+	/**
+	 * creates random scores of won, drawn and lost positions
+	 * @param size		number of scores
+	 * @return
+	 */
+	private byte[] scores(int size) {
+		Random random = new Random(7);
+		byte[] scores = new byte[size];
+		for (int i=0; i<size; i++) {
+			scores[i] = (byte) (random.nextInt(37) - 18);
+		}
+		return scores;
+	}
+}